@@ -26,7 +26,7 @@ import org.gjt.sp.jedit.textarea.JEditTextArea;
 import org.jedit.ruby.ast.Member;
 import org.jedit.ruby.ast.Method;
 import org.jedit.ruby.ast.RubyMembers;
-import org.jedit.ruby.parser.RubyParser;
+import org.jedit.ruby.parser.ParseService;
 import org.jedit.ruby.structure.RubySideKickParser;
 import org.jedit.ruby.structure.*;
 import org.jedit.ruby.structure.TypeAheadPopup;
@@ -198,7 +198,7 @@ public final class RubyActions {
 
     public static void nextMethod(View view) {
         if (isRubyFile(view)) {
-            RubyMembers members = RubyParser.getMembers(view);
+            RubyMembers members = ParseService.instance().getMembers(view.getBuffer());
 
             if (!members.containsErrors()) {
                 JEditTextArea textArea = view.getTextArea();
@@ -224,7 +224,7 @@ public final class RubyActions {
 
     public static void previousMethod(View view) {
         if (isRubyFile(view)) {
-            RubyMembers members = RubyParser.getMembers(view);
+            RubyMembers members = ParseService.instance().getMembers(view.getBuffer());
 
             if (!members.containsErrors()) {
                 JEditTextArea textArea = view.getTextArea();
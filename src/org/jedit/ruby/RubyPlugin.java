@@ -27,10 +27,15 @@ import org.gjt.sp.jedit.msg.PropertiesChanged;
 import org.gjt.sp.jedit.textarea.JEditTextArea;
 import org.gjt.sp.util.Log;
 import org.jedit.ruby.parser.JRubyParser;
+import org.jedit.ruby.parser.ParseService;
+import org.jedit.ruby.parser.RubyParser;
 import org.jedit.ruby.ri.RiParser;
+import org.jedit.ruby.cache.ProjectIndexer;
 import org.jedit.ruby.completion.RubyKeyBindings;
 import org.jedit.ruby.structure.RubyStructureMatcher;
 import org.jedit.ruby.structure.BufferChangeHandler;
+import org.jedit.ruby.structure.EndBalanceIndex;
+import org.jedit.ruby.structure.LineTokenCache;
 import org.jedit.ruby.utils.CharCaretListener;
 import org.jedit.ruby.utils.EditorView;
 import org.jedit.ruby.utils.ViewWrapper;
@@ -42,6 +47,8 @@ import java.awt.event.KeyEvent;
 import java.io.*;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * @author robmckinnon at users,sourceforge,net
@@ -57,8 +64,18 @@ public final class RubyPlugin extends EBPlugin {
         JRubyParser.setExpectedLabel(jEdit.getProperty("ruby.syntax-error.expected.label"));
         JRubyParser.setFoundLabel(jEdit.getProperty("ruby.syntax-error.found.label"));
         JRubyParser.setNothingLabel(jEdit.getProperty("ruby.syntax-error.nothing.label"));
+        RubyParser.setCacheBudget(jEdit.getIntegerProperty("ruby.parse-cache.kilobytes", 8192));
 
         RiParser.parseRdoc();
+        ProjectIndexer.indexProject(getProjectRoots(), jEdit.getIntegerProperty("ruby.project-index.poll-seconds", 10));
+
+        for (Buffer buffer : jEdit.getBuffers()) {
+            buffer.removeBufferListener(BufferChangeHandler.instance());
+            buffer.addBufferListener(BufferChangeHandler.instance());
+            if (isRuby(buffer)) {
+                ParseService.instance().bufferLoaded(buffer);
+            }
+        }
 
         View view = jEdit.getFirstView();
         while (view != null) {
@@ -70,6 +87,29 @@ public final class RubyPlugin extends EBPlugin {
         }
     }
 
+    public final void stop() {
+        ProjectIndexer.stopIndexing();
+        ParseService.instance().shutdown();
+        RiParser.stop();
+        super.stop();
+    }
+
+    /**
+     * @return project directories to index, from the
+     * ruby.project-index.roots property, separated
+     * by the path separator
+     */
+    private static List<File> getProjectRoots() {
+        List<File> roots = new ArrayList<File>();
+        String property = jEdit.getProperty("ruby.project-index.roots", "");
+        for (String path : property.split(File.pathSeparator)) {
+            if (path.trim().length() > 0) {
+                roots.add(new File(path.trim()));
+            }
+        }
+        return roots;
+    }
+
     public void handleMessage(EBMessage message) {
         if (message instanceof ViewUpdate) {
             handleViewUpdate((ViewUpdate)message);
@@ -92,10 +132,17 @@ public final class RubyPlugin extends EBPlugin {
 
     private static void handleBufferUpdate(BufferUpdate update) {
         if (BufferUpdate.LOADED == update.getWhat()) {
+            update.getBuffer().removeBufferListener(BufferChangeHandler.instance());
             update.getBuffer().addBufferListener(BufferChangeHandler.instance());
+            if (isRuby(update.getBuffer())) {
+                ParseService.instance().bufferLoaded(update.getBuffer());
+            }
 
         } if (BufferUpdate.CLOSED == update.getWhat()) {
-            update.getBuffer().addBufferListener(BufferChangeHandler.instance());
+            update.getBuffer().removeBufferListener(BufferChangeHandler.instance());
+            ParseService.instance().bufferClosed(update.getBuffer());
+            LineTokenCache.bufferClosed(update.getBuffer());
+            EndBalanceIndex.bufferClosed(update.getBuffer());
         }
     }
 
@@ -26,7 +26,6 @@ import org.jedit.ruby.cache.RubyCache;
  */
 public final class ClassMember extends ParentMember {
 
-    private String fullDocumentation;
     private String superClassName;
 
     public ClassMember(String name) {
@@ -46,23 +45,19 @@ public final class ClassMember extends ParentMember {
     }
 
     public void setSuperClassName(String superClassName) {
-        this.superClassName = superClassName;
+        this.superClassName = SymbolTable.intern(superClassName);
     }
 
-    public final String getDocumentation() {
-        if (fullDocumentation == null) {
-            StringBuffer buffer = new StringBuffer();
-            buffer.append("<p>Class: ").append(getFullName());
+    protected final String renderDocumentation(String comment) {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("<p>Class: ").append(getFullName());
 
-            String superClassName = getSuperClassName();
-            appendSuperClassToDocumentation(superClassName, buffer);
+        String superClassName = getSuperClassName();
+        appendSuperClassToDocumentation(superClassName, buffer);
 
-            buffer.append("</p><br>");
-            buffer.append(super.getDocumentation());
-            fullDocumentation = buffer.toString();
-        }
-
-        return fullDocumentation;
+        buffer.append("</p><br>");
+        buffer.append(comment);
+        return buffer.toString();
     }
 
     private void appendSuperClassToDocumentation(String superClassName, StringBuffer buffer) {
@@ -0,0 +1,35 @@
+/*
+ * DocumentationSource.java - 
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.ast;
+
+/**
+ * Supplies member documentation comments on demand,
+ * so that comment text need not be held on the heap.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public interface DocumentationSource {
+
+    /**
+     * @return documentation comment stored at the given position
+     */
+    String getDocumentation(int offset, int length);
+
+}
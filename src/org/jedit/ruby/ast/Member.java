@@ -26,12 +26,14 @@ import java.util.*;
  *
  * @author robmckinnon at users.sourceforge.net
  */
-public abstract class Member implements Comparable<Member> {
+public abstract class Member implements Comparable<Member>, Cloneable {
 
     protected static final String SELF = "self";
 
     private static final Member[] EMPTY_MEMBER_ARRAY = new Member[0];
 
+    private static final RenderedDocumentation renderedDocumentation = new RenderedDocumentation();
+
     private List<Member> parentPath;
     private int parentCount;
 
@@ -45,6 +47,9 @@ public abstract class Member implements Comparable<Member> {
     private String namespace;
     private String compositeNamespace;
     private String documentation;
+    private DocumentationSource documentationSource;
+    private int documentationOffset;
+    private int documentationLength;
     private int startOuterOffset;
     private int startOffset;
     private int endOffset;
@@ -53,7 +58,7 @@ public abstract class Member implements Comparable<Member> {
         parentCount = -1;
         setName(name);
         boolean noParameters = name.indexOf("(") == -1;
-        shortName = noParameters ? name : (new StringTokenizer(name, " (")).nextToken();
+        shortName = noParameters ? getName() : SymbolTable.intern((new StringTokenizer(name, " (")).nextToken());
     }
 
     public int compareTo(Member member) {
@@ -74,6 +79,33 @@ public abstract class Member implements Comparable<Member> {
 
     public abstract void accept(MemberVisitor visitor);
 
+    /**
+     * Returns a copy of this member and its children with offsets
+     * shifted. Parse results are shared once handed out, so members
+     * moved by an edit are copied rather than shifted in place.
+     */
+    public final Member copyShifted(int shift) {
+        Member copy;
+        try {
+            copy = (Member)clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        copy.startOuterOffset += shift;
+        copy.startOffset += shift;
+        copy.endOffset += shift;
+        copy.parentPath = null;
+        copy.parentCount = -1;
+
+        if (childMembers != null) {
+            copy.childMembers = new ArrayList<Member>(childMembers.size());
+            for (Member child : childMembers) {
+                copy.addChildMember(child.copyShifted(shift));
+            }
+        }
+        return copy;
+    }
+
     final void visitChildren(MemberVisitor visitor) {
         if (hasChildMembers()) {
             for (Member member : getChildMembersAsList()) {
@@ -86,12 +118,16 @@ public abstract class Member implements Comparable<Member> {
         return namespace;
     }
 
+    final String getCompositeNamespace() {
+        return compositeNamespace;
+    }
+
     public final void setCompositeNamespace(String namespace) {
-        compositeNamespace = namespace;
+        compositeNamespace = SymbolTable.intern(namespace);
     }
 
     public final void setNamespace(String namespace) {
-        this.namespace = namespace;
+        this.namespace = SymbolTable.intern(namespace);
     }
 
     /**
@@ -133,7 +169,7 @@ public abstract class Member implements Comparable<Member> {
     }
 
     void setName(String name) {
-        this.name = name;
+        this.name = SymbolTable.intern(name);
     }
 
     /**
@@ -147,7 +183,7 @@ public abstract class Member implements Comparable<Member> {
     }
 
     protected void setShortName(String name) {
-        shortName = name;
+        shortName = SymbolTable.intern(name);
     }
 
     public final String getLowerCaseName() {
@@ -156,7 +192,7 @@ public abstract class Member implements Comparable<Member> {
             if (name.equals(lowerCase)) {
                 lowerCaseName = name;
             } else {
-                lowerCaseName = lowerCase;
+                lowerCaseName = SymbolTable.intern(lowerCase);
             }
         }
         return lowerCaseName;
@@ -295,7 +331,7 @@ public abstract class Member implements Comparable<Member> {
     }
 
     public final void setParentMemberName(String parentClass) {
-        this.parentMemberName = parentClass;
+        this.parentMemberName = SymbolTable.intern(parentClass);
     }
 
     public final void setParentMember(Member parentMember) {
@@ -303,15 +339,52 @@ public abstract class Member implements Comparable<Member> {
     }
 
     public final void setDocumentationComment(String documentation) {
+        this.documentation = unescape(documentation);
+        documentationSource = null;
+    }
+
+    /**
+     * Sets documentation comment to be read from the supplied
+     * source when the documentation is first displayed.
+     */
+    public final void setDocumentationComment(DocumentationSource source, int offset, int length) {
+        documentation = null;
+        documentationSource = source;
+        documentationOffset = offset;
+        documentationLength = length;
+    }
+
+    /**
+     * Returns rendered documentation, recently rendered
+     * documentation is cached rather than held by each member.
+     */
+    public final String getDocumentation() {
+        String rendered = renderedDocumentation.get(this);
+        if (rendered == null) {
+            rendered = renderDocumentation(getDocumentationComment());
+            renderedDocumentation.put(this, rendered);
+        }
+        return rendered;
+    }
+
+    protected String renderDocumentation(String comment) {
+        return comment;
+    }
+
+    private String getDocumentationComment() {
+        if (documentationSource != null) {
+            return unescape(documentationSource.getDocumentation(documentationOffset, documentationLength));
+        } else {
+            return documentation;
+        }
+    }
+
+    private static String unescape(String documentation) {
         int index = documentation.indexOf("|lt;");
         while (index != -1) {
             documentation = documentation.substring(0, index) + "&lt;" + documentation.substring(index+4);
             index = documentation.indexOf("|lt;");
         }
-        this.documentation = documentation;
-    }
-
-    public String getDocumentation() {
         return documentation;
     }
 
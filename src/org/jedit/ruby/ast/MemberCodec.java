@@ -0,0 +1,252 @@
+/*
+ * MemberCodec.java - Writes and reads parsed members
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.ast;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the modules, classes, methods and method calls
+ * produced by the parser, and reads them back as equal members.
+ * <p/>
+ * Strings are written once to a table and referred to by index,
+ * as names, namespaces and file paths repeat across members.
+ * Members are written first, then the table is written ahead of
+ * them with {@link #writeStrings(DataOutput)}.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class MemberCodec {
+
+    private static final byte MODULE = 0;
+    private static final byte CLASS = 1;
+    private static final byte METHOD = 2;
+    private static final byte METHOD_CALL = 3;
+
+    private static final int NULL = -1;
+
+    private final Map<String, Integer> stringToIndex;
+    private final List<String> strings;
+
+    public MemberCodec() {
+        stringToIndex = new HashMap<String, Integer>();
+        strings = new ArrayList<String>();
+    }
+
+    private MemberCodec(List<String> strings) {
+        stringToIndex = null;
+        this.strings = strings;
+    }
+
+    /**
+     * Returns true if every member is of a type
+     * the parser produces and so can be written.
+     */
+    public static boolean canWrite(Member[] members) {
+        for (Member member : members) {
+            if (!(member instanceof ParentMember
+                    || member instanceof Method
+                    || member instanceof MethodCallWithSelfAsAnImplicitReceiver)) {
+                return false;
+            } else if (member.hasChildMembers() && !canWrite(member.getChildMembers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public final void writeStrings(DataOutput output) throws IOException {
+        output.writeInt(strings.size());
+        for (String string : strings) {
+            output.writeUTF(string);
+        }
+    }
+
+    public static MemberCodec readStrings(DataInput input) throws IOException {
+        int count = input.readInt();
+        List<String> strings = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(SymbolTable.intern(input.readUTF()));
+        }
+        return new MemberCodec(strings);
+    }
+
+    public final void writeMembers(Member[] members, DataOutput output) throws IOException {
+        output.writeInt(members.length);
+        for (Member member : members) {
+            writeMember(member, output);
+        }
+    }
+
+    public final Member[] readMembers(DataInput input) throws IOException {
+        Member[] members = new Member[input.readInt()];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = readMember(input);
+        }
+        return members;
+    }
+
+    private void writeMember(Member member, DataOutput output) throws IOException {
+        if (member instanceof Module) {
+            output.writeByte(MODULE);
+        } else if (member instanceof ClassMember) {
+            output.writeByte(CLASS);
+        } else if (member instanceof Method) {
+            output.writeByte(METHOD);
+        } else if (member instanceof MethodCallWithSelfAsAnImplicitReceiver) {
+            output.writeByte(METHOD_CALL);
+        } else {
+            throw new IOException("can't write member: " + member.getClass().getName());
+        }
+
+        writeString(member.getName(), output);
+        writeString(member.getShortName(), output);
+        writeString(member.getNamespace(), output);
+        writeString(member.getCompositeNamespace(), output);
+        output.writeInt(member.getStartOuterOffset());
+        output.writeInt(member.getStartOffset());
+        output.writeInt(member.getEndOffset());
+
+        if (member instanceof Method) {
+            Method method = (Method)member;
+            writeString(method.getFilePath(), output);
+            writeString(method.getFileName(), output);
+            writeString(method.getReceiverName(), output);
+            output.writeBoolean(method.isClassMethod());
+
+        } else if (member instanceof MethodCallWithSelfAsAnImplicitReceiver) {
+            writeStringList(((MethodCallWithSelfAsAnImplicitReceiver)member).getArguments(), output);
+
+        } else {
+            if (member instanceof ClassMember) {
+                writeString(((ClassMember)member).getSuperClassName(), output);
+            }
+            writeStringList(((ParentMember)member).getIncludedModuleNames(), output);
+        }
+
+        if (member.hasChildMembers()) {
+            writeMembers(member.getChildMembers(), output);
+        } else {
+            output.writeInt(0);
+        }
+    }
+
+    private Member readMember(DataInput input) throws IOException {
+        byte type = input.readByte();
+        String name = readString(input);
+        String shortName = readString(input);
+        String namespace = readString(input);
+        String compositeNamespace = readString(input);
+        int startOuterOffset = input.readInt();
+        int startOffset = input.readInt();
+        int endOffset = input.readInt();
+
+        Member member;
+        switch (type) {
+            case MODULE:
+            case CLASS:
+                ParentMember parent = type == MODULE ? new Module(name) : new ClassMember(name);
+                if (type == CLASS) {
+                    ((ClassMember)parent).setSuperClassName(readString(input));
+                }
+                for (String moduleName : readStringList(input)) {
+                    parent.addIncludedModuleName(moduleName);
+                }
+                member = parent;
+                break;
+            case METHOD:
+                String filePath = readString(input);
+                String fileName = readString(input);
+                String receiverName = readString(input);
+                Method method = new Method(name, null, filePath, fileName, input.readBoolean());
+                method.setReceiverName(receiverName);
+                member = method;
+                break;
+            case METHOD_CALL:
+                MethodCallWithSelfAsAnImplicitReceiver call = new MethodCallWithSelfAsAnImplicitReceiver(name);
+                for (String argument : readStringList(input)) {
+                    call.addArgument(argument);
+                }
+                member = call;
+                break;
+            default:
+                throw new IOException("unknown member type: " + type);
+        }
+
+        member.setShortName(shortName);
+        member.setNamespace(namespace);
+        member.setCompositeNamespace(compositeNamespace);
+        member.setStartOuterOffset(startOuterOffset);
+        member.setStartOffset(startOffset);
+        member.setEndOffset(endOffset);
+
+        int childCount = input.readInt();
+        for (int i = 0; i < childCount; i++) {
+            member.addChildMember(readMember(input));
+        }
+        return member;
+    }
+
+    private void writeStringList(List<String> strings, DataOutput output) throws IOException {
+        output.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(string, output);
+        }
+    }
+
+    private List<String> readStringList(DataInput input) throws IOException {
+        int count = input.readInt();
+        List<String> list = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(readString(input));
+        }
+        return list;
+    }
+
+    private void writeString(String string, DataOutput output) throws IOException {
+        if (string == null) {
+            output.writeInt(NULL);
+        } else {
+            Integer index = stringToIndex.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                stringToIndex.put(string, index);
+            }
+            output.writeInt(index);
+        }
+    }
+
+    private String readString(DataInput input) throws IOException {
+        int index = input.readInt();
+        if (index == NULL) {
+            return null;
+        } else if (index < 0 || index >= strings.size()) {
+            throw new IOException("bad string index: " + index);
+        } else {
+            return strings.get(index);
+        }
+    }
+}
@@ -36,14 +36,13 @@ public final class Method extends Member {
     private String receiverName;
     private String parameters;
     private String blockParameters;
-    private String fullDocumentation;
     private boolean isClassMethod;
     private boolean hasParameters;
 
     public Method(String name, String params, String filePath, String fileName, boolean classMethod) {
         super(params == null ? name : name + params);
-        this.filePath = filePath;
-        this.fileName = fileName;
+        this.filePath = SymbolTable.intern(filePath);
+        this.fileName = SymbolTable.intern(fileName);
         isClassMethod = classMethod;
         hasParameters = true;
     }
@@ -56,6 +55,10 @@ public final class Method extends Member {
         return returnTypes;
     }
 
+    public final void setReturnTypes(Set<Member> returnTypes) {
+        this.returnTypes = returnTypes;
+    }
+
     /**
      * Returns member name including any
      * namespace or receiver prefix.
@@ -91,10 +94,17 @@ public final class Method extends Member {
             setName(methodName);
         }
         setClassMethod(true);
-        this.receiverName = receiverName;
+        this.receiverName = SymbolTable.intern(receiverName);
+    }
+
+    final String getReceiverName() {
+        return receiverName;
+    }
+
+    final void setReceiverName(String receiverName) {
+        this.receiverName = SymbolTable.intern(receiverName);
     }
 
-    
     public final void setClassMethod(boolean classMethod) {
         isClassMethod = classMethod;
     }
@@ -138,22 +148,18 @@ public final class Method extends Member {
         super.setName(name);
     }
 
-    public final String getDocumentation() {
-        if (fullDocumentation == null) {
-            StringBuffer buffer = new StringBuffer();
-            String parameters = getDocumentationParameters();
-            if (parameters.length() == 0) {
-                parameters = getDocumentationBlockParameters();
-            }
-
-            if (parameters.length() != 0) {
-                buffer.append("<hr><pre class=\"param\">").append(parameters).append("</pre><hr><br>");
-            }
-            buffer.append(super.getDocumentation());
-            fullDocumentation = buffer.toString();
+    protected final String renderDocumentation(String comment) {
+        StringBuffer buffer = new StringBuffer();
+        String parameters = getDocumentationParameters();
+        if (parameters.length() == 0) {
+            parameters = getDocumentationBlockParameters();
         }
 
-        return fullDocumentation;
+        if (parameters.length() != 0) {
+            buffer.append("<hr><pre class=\"param\">").append(parameters).append("</pre><hr><br>");
+        }
+        buffer.append(comment);
+        return buffer.toString();
     }
 
     public final boolean hasParameters() {
@@ -179,11 +185,14 @@ public final class Method extends Member {
             hasParameters = false;
         }
 
-        this.parameters = parameters;
+        this.parameters = SymbolTable.intern(parameters);
     }
 
     public final void populateReturnTypes() {
-        if (parameters.indexOf("=>") != -1) {
+        if (parameters == null) {
+            returnTypes = null;
+
+        } else if (parameters.indexOf("=>") != -1) {
             returnTypes = guessReturnTypes(parameters, "=>");
 
         } else if (parameters.indexOf("->") != -1) {
@@ -370,7 +379,7 @@ public final class Method extends Member {
 
 
     public final void setDocumentationBlockParams(String blockParameters) {
-        this.blockParameters = blockParameters;
+        this.blockParameters = SymbolTable.intern(blockParameters);
     }
 
     private String getDocumentationBlockParameters() {
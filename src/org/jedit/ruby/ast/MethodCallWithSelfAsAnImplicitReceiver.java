@@ -52,6 +52,10 @@ public class MethodCallWithSelfAsAnImplicitReceiver extends Member  {
         }
     }
 
+    final List<String> getArguments() {
+        return arguments;
+    }
+
     public void addArgument(String argument) {
         arguments.add(argument);
     }
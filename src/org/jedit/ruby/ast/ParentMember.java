@@ -21,16 +21,40 @@ package org.jedit.ruby.ast;
 
 import java.util.Set;
 import java.util.HashSet;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * @author robmckinnon at users.sourceforge.net
  */
 public abstract class ParentMember extends Member {
 
+    private List<String> includedModuleNames;
+
     ParentMember(String name) {
         super(name);
     }
 
+    /**
+     * Records a module named in an include statement,
+     * in the order the includes appear.
+     */
+    public final void addIncludedModuleName(String moduleName) {
+        if (includedModuleNames == null) {
+            includedModuleNames = new ArrayList<String>();
+        }
+        includedModuleNames.add(SymbolTable.intern(moduleName));
+    }
+
+    public final List<String> getIncludedModuleNames() {
+        if (includedModuleNames == null) {
+            return Collections.emptyList();
+        } else {
+            return includedModuleNames;
+        }
+    }
+
     public final Set<Method> getMethods() {
         final Set<Method> methods = new HashSet<Method>();
 
@@ -37,6 +37,13 @@ public abstract class Problem extends Member {
         this.line = line;
     }
 
+    /**
+     * @return line number starting at 0
+     */
+    public final int getLine() {
+        return line;
+    }
+
     public final String getName() {
         return " " + (line + 1) + ": " + super.getName();
     }
@@ -0,0 +1,58 @@
+/*
+ * RenderedDocumentation.java - 
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.ast;
+
+/**
+ * Small least recently used cache of rendered member
+ * documentation. Members are matched by identity, as
+ * RDoc members from different documentation sets may
+ * be equal by name but have different documentation.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class RenderedDocumentation {
+
+    private static final int SIZE = 32;
+
+    private final Member[] members = new Member[SIZE];
+    private final String[] documentation = new String[SIZE];
+
+    synchronized String get(Member member) {
+        for (int i = 0; i < SIZE && members[i] != null; i++) {
+            if (members[i] == member) {
+                String rendered = documentation[i];
+                moveToFront(i, member, rendered);
+                return rendered;
+            }
+        }
+        return null;
+    }
+
+    synchronized void put(Member member, String rendered) {
+        moveToFront(SIZE - 1, member, rendered);
+    }
+
+    private void moveToFront(int index, Member member, String rendered) {
+        System.arraycopy(members, 0, members, 1, index);
+        System.arraycopy(documentation, 0, documentation, 1, index);
+        members[0] = member;
+        documentation[0] = rendered;
+    }
+}
@@ -23,6 +23,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Members of a parsed file. Lookups by offset binary search an
+ * index of the members' offsets, made on the first lookup.
+ *
  * @author robmckinnon at users.sourceforge.net
  */
 public final class RubyMembers {
@@ -33,6 +36,7 @@ public final class RubyMembers {
     private List<Member> memberList;
     private List<Problem> problems;
     private Root rootMember;
+    private volatile OffsetIndex offsetIndex;
 
     public RubyMembers(Member[] memberArray, List<Problem> problems, int textLength) {
         members = memberArray;
@@ -125,6 +129,15 @@ public final class RubyMembers {
     }
 
     private int getLastMemberIndexBefore(int caretPosition) {
+        OffsetIndex index = getOffsetIndex();
+        if (index.startsSorted) {
+            return index.getLastIndexBefore(caretPosition);
+        } else {
+            return scanForLastMemberIndexBefore(caretPosition);
+        }
+    }
+
+    private int scanForLastMemberIndexBefore(int caretPosition) {
         int lastIndex = memberList.size() - 1;
         int memberIndex = ROOT;
 
@@ -149,6 +162,16 @@ public final class RubyMembers {
     }
 
     private int getMemberIndexAt(int caretPosition) {
+        OffsetIndex index = getOffsetIndex();
+        if (index.nested) {
+            int memberIndex = index.getLastIndexAtOrBefore(caretPosition);
+            return index.getInnermostIndexAt(memberIndex, caretPosition);
+        } else {
+            return scanForMemberIndexAt(caretPosition);
+        }
+    }
+
+    private int scanForMemberIndexAt(int caretPosition) {
         int memberIndex = ROOT;
 
         for (int i = 0; i < memberList.size(); i++) {
@@ -211,4 +234,105 @@ public final class RubyMembers {
         }
     }
 
+    private OffsetIndex getOffsetIndex() {
+        OffsetIndex index = offsetIndex;
+        if (index == null) {
+            index = new OffsetIndex(memberList);
+            offsetIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Offsets of the members in the order of the member list, i.e.
+     * parents before their children. Start offsets are binary
+     * searched if they ascend. Member at offset is found by binary
+     * search then a walk up the parents if the members nest, i.e.
+     * outer offsets ascend, children end within their parents and
+     * siblings don't overlap; otherwise the member list is scanned.
+     * Members' offsets don't change once parsed, so the index is
+     * made once.
+     */
+    private static final class OffsetIndex {
+        private final int[] startOffsets;
+        private final int[] outerOffsets;
+        private final int[] endOffsets;
+        private final int[] parents;
+        private final boolean startsSorted;
+        private final boolean nested;
+
+        OffsetIndex(List<Member> memberList) {
+            int size = memberList.size();
+            startOffsets = new int[size];
+            outerOffsets = new int[size];
+            endOffsets = new int[size];
+            parents = new int[size];
+
+            boolean sorted = true;
+            boolean nesting = true;
+            for (int i = 0; i < size; i++) {
+                Member member = memberList.get(i);
+                startOffsets[i] = member.getStartOffset();
+                outerOffsets[i] = member.getStartOuterOffset();
+                endOffsets[i] = member.getEndOffset();
+
+                int parent = i - 1;
+                while (parent != ROOT && memberList.get(parent) != member.getParentMember()) {
+                    nesting &= endOffsets[parent] < outerOffsets[i];
+                    parent = parents[parent];
+                }
+                parents[i] = parent;
+
+                if (i > 0) {
+                    sorted &= startOffsets[i - 1] <= startOffsets[i];
+                    nesting &= outerOffsets[i - 1] <= outerOffsets[i];
+                }
+                if (parent != ROOT) {
+                    nesting &= endOffsets[i] <= endOffsets[parent];
+                }
+            }
+            startsSorted = sorted;
+            nested = nesting && sorted;
+        }
+
+        /**
+         * @return last member starting at or before offset
+         */
+        final int getLastIndexBefore(int offset) {
+            return getLastIndexAtOrBefore(startOffsets, offset);
+        }
+
+        /**
+         * @return last member whose outer offset is at or before offset
+         */
+        final int getLastIndexAtOrBefore(int offset) {
+            return getLastIndexAtOrBefore(outerOffsets, offset);
+        }
+
+        private static int getLastIndexAtOrBefore(int[] offsets, int offset) {
+            int low = 0;
+            int high = offsets.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (offsets[middle] <= offset) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low - 1;
+        }
+
+        /**
+         * As members nest, members holding the offset
+         * are the member at index and its parents.
+         */
+        final int getInnermostIndexAt(int index, int offset) {
+            while (index != ROOT && (offset < outerOffsets[index] || offset > endOffsets[index])) {
+                index = parents[index];
+            }
+            return index;
+        }
+    }
+
 }
\ No newline at end of file
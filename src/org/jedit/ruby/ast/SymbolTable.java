@@ -0,0 +1,45 @@
+/*
+ * SymbolTable.java - Canonical copies of member names
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.ast;
+
+/**
+ * Canonical copies of the names, namespaces and parameters
+ * of members, so that equal strings, e.g. "each" or "to_s",
+ * are shared by all members rather than held once per member,
+ * whether the members come from RDoc or from parsing a file.
+ * <p/>
+ * Symbols are kept in the JVM's string pool, which drops them
+ * once no member refers to them. A table of weak references
+ * was tried and its per entry overhead outweighed the saving.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class SymbolTable {
+
+    private SymbolTable() {
+    }
+
+    /**
+     * @return canonical string equal to the supplied string, or null if it is null
+     */
+    public static String intern(String string) {
+        return string == null ? null : string.intern();
+    }
+}
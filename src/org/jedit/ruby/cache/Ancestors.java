@@ -0,0 +1,326 @@
+/*
+ * Ancestors.java - Memoized ancestors of Ruby classes and modules
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.cache;
+
+import org.jedit.ruby.ast.ClassMember;
+import org.jedit.ruby.ast.Method;
+import org.jedit.ruby.ast.ParentMember;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ancestors of modules and classes in the order Ruby searches
+ * them for a method: the module or class, the modules it
+ * includes, last included first, then the ancestors of its
+ * superclass. Modules already among the superclass's
+ * ancestors are not repeated.
+ * <p/>
+ * Ancestors and the methods they provide are computed on the
+ * first lookup of a module or class and memoized. Memoized
+ * ancestors are shared by published versions and are only
+ * discarded when a module or class they were resolved from
+ * changes, found through an index of their dependencies.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class Ancestors {
+
+    /**
+     * Modules included by Rails base classes at runtime,
+     * which RDoc doesn't see. Methods of each module's
+     * ClassMethods module become class methods of the
+     * base class, see {@link #getImplicitIncludes}.
+     */
+    private static final Map<String, String[]> IMPLICIT_INCLUDES = new HashMap<String, String[]>();
+
+    static {
+        IMPLICIT_INCLUDES.put("ActionController::Base", new String[]{
+                "ActionController::Filters",
+                "ActionController::Layout",
+                "ActionController::Flash",
+                "ActionController::Benchmarking",
+                "ActionController::Rescue",
+                "ActionController::Dependencies",
+                "ActionController::Pagination",
+                "ActionController::Scaffolding",
+                "ActionController::Helpers",
+                "ActionController::Cookies",
+                "ActionController::Caching",
+                "ActionController::Components",
+                "ActionController::Verification",
+                "ActionController::Streaming",
+                "ActionController::SessionManagement",
+                "ActionController::Macros::AutoComplete",
+                "ActionController::Macros::InPlaceEditing"
+        });
+
+        IMPLICIT_INCLUDES.put("ActiveRecord::Base", new String[]{
+                "ActiveRecord::Validations",
+                "ActiveRecord::Locking",
+                "ActiveRecord::Callbacks",
+                "ActiveRecord::Observing",
+                "ActiveRecord::Timestamp",
+                "ActiveRecord::Associations",
+                "ActiveRecord::Aggregations",
+                "ActiveRecord::Transactions",
+                "ActiveRecord::Reflection",
+                "ActiveRecord::Acts::Tree",
+                "ActiveRecord::Acts::List",
+                "ActiveRecord::Acts::NestedSet"
+        });
+    }
+
+    private final ConcurrentMap<String, Linearization> fullNameToLinearization;
+    private final ConcurrentMap<String, Set<String>> nameToDependents;
+    private volatile int generation;
+
+    Ancestors() {
+        fullNameToLinearization = new ConcurrentHashMap<String, Linearization>();
+        nameToDependents = new ConcurrentHashMap<String, Set<String>>();
+    }
+
+    /**
+     * Discards memoized ancestors resolved from any of the changed
+     * module or class names. Called by the writer before publishing.
+     *
+     * @return generation of the version about to be published
+     */
+    final int invalidate(Set<String> changedNames) {
+        if (!changedNames.isEmpty()) {
+            generation++;
+            for (String name : changedNames) {
+                Set<String> dependents = nameToDependents.remove(name);
+                if (dependents != null) {
+                    for (String fullName : dependents) {
+                        fullNameToLinearization.remove(fullName);
+                    }
+                }
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Discards all memoized ancestors, e.g. after methods
+     * have been made class methods.
+     */
+    final void invalidateAll() {
+        generation++;
+        nameToDependents.clear();
+        fullNameToLinearization.clear();
+    }
+
+    final List<ParentMember> getAncestors(ParentMember member, RubyCacheVersion version, int versionGeneration) {
+        return getLinearization(member, version, versionGeneration, new HashSet<String>()).ancestors;
+    }
+
+    /**
+     * @return methods of member and the methods it inherits,
+     * excluding methods overridden by an earlier ancestor
+     */
+    final Set<Method> getMethods(ParentMember member, RubyCacheVersion version, int versionGeneration) {
+        Linearization linearization = getLinearization(member, version, versionGeneration, new HashSet<String>());
+        if (linearization.methods == null) {
+            linearization.methods = collectMethods(linearization, version);
+        }
+        return linearization.methods;
+    }
+
+    private static Set<Method> collectMethods(Linearization linearization, RubyCacheVersion version) {
+        Set<Method> methods = new HashSet<Method>();
+        Set<String> names = new HashSet<String>();
+
+        for (ParentMember ancestor : linearization.ancestors) {
+            boolean included = linearization.includedModules.contains(ancestor);
+            for (Method method : version.getImmediateMethods(ancestor.getFullName())) {
+                if (!(included && method.isClassMethod())) {
+                    String key = method.isClassMethod() ? "." + method.getName() : method.getName();
+                    if (names.add(key)) {
+                        methods.add(method);
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableSet(methods);
+    }
+
+    private Linearization getLinearization(ParentMember member, RubyCacheVersion version, int versionGeneration, Set<String> visiting) {
+        String fullName = member.getFullName();
+        Linearization linearization = fullNameToLinearization.get(fullName);
+
+        if (linearization == null) {
+            if (visiting.add(fullName)) {
+                linearization = linearize(member, version, versionGeneration, visiting);
+                visiting.remove(fullName);
+                memoize(fullName, linearization, versionGeneration);
+            } else {
+                linearization = new Linearization(member);
+            }
+        }
+        return linearization;
+    }
+
+    /**
+     * Dependencies are indexed before the linearization is added,
+     * and it is removed again if a version was published meanwhile,
+     * as it may have been resolved from a superseded version.
+     */
+    private void memoize(String fullName, Linearization linearization, int versionGeneration) {
+        for (String name : linearization.dependencies) {
+            Set<String> dependents = nameToDependents.get(name);
+            if (dependents == null) {
+                dependents = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                Set<String> existing = nameToDependents.putIfAbsent(name, dependents);
+                if (existing != null) {
+                    dependents = existing;
+                }
+            }
+            dependents.add(fullName);
+        }
+        fullNameToLinearization.put(fullName, linearization);
+
+        if (generation != versionGeneration) {
+            fullNameToLinearization.remove(fullName, linearization);
+        }
+    }
+
+    private Linearization linearize(ParentMember member, RubyCacheVersion version, int versionGeneration, Set<String> visiting) {
+        Linearization linearization = new Linearization(member);
+        Linearization superLinearization = null;
+        List<ParentMember> superAncestors = Collections.emptyList();
+
+        if (member instanceof ClassMember && ((ClassMember)member).hasSuperClassName()) {
+            ParentMember superClass = resolve(member, ((ClassMember)member).getSuperClassName(), version, linearization);
+            if (superClass != null) {
+                superLinearization = getLinearization(superClass, version, versionGeneration, visiting);
+                linearization.dependencies.addAll(superLinearization.dependencies);
+                superAncestors = superLinearization.ancestors;
+            }
+        }
+
+        List<String> includes = member.getIncludedModuleNames();
+        for (int i = includes.size() - 1; i >= 0; i--) {
+            ParentMember module = resolve(member, includes.get(i), version, linearization);
+            if (module != null) {
+                Linearization moduleLinearization = getLinearization(module, version, versionGeneration, visiting);
+                linearization.dependencies.addAll(moduleLinearization.dependencies);
+                for (ParentMember ancestor : moduleLinearization.ancestors) {
+                    if (!linearization.ancestors.contains(ancestor) && !superAncestors.contains(ancestor)) {
+                        linearization.ancestors.add(ancestor);
+                        linearization.includedModules.add(ancestor);
+                    }
+                }
+            }
+        }
+
+        for (ParentMember module : getImplicitIncludes(member, version, linearization)) {
+            if (!linearization.ancestors.contains(module)) {
+                linearization.ancestors.add(module);
+            }
+        }
+
+        for (ParentMember ancestor : superAncestors) {
+            if (!linearization.ancestors.contains(ancestor)) {
+                linearization.ancestors.add(ancestor);
+                if (superLinearization.includedModules.contains(ancestor)) {
+                    linearization.includedModules.add(ancestor);
+                }
+            }
+        }
+
+        for (ParentMember ancestor : linearization.ancestors) {
+            linearization.dependencies.add(ancestor.getFullName());
+            linearization.dependencies.add(ancestor.getName());
+        }
+        return linearization;
+    }
+
+    /**
+     * Returns the modules included at runtime by a Rails base
+     * class, using each module's ClassMethods module if it has
+     * methods.
+     */
+    static List<ParentMember> getImplicitIncludes(ParentMember member, RubyCacheVersion version) {
+        return getImplicitIncludes(member, version, null);
+    }
+
+    private static List<ParentMember> getImplicitIncludes(ParentMember member, RubyCacheVersion version, Linearization linearization) {
+        String[] includes = IMPLICIT_INCLUDES.get(member.getFullName());
+        if (includes == null) {
+            return Collections.emptyList();
+        } else {
+            List<ParentMember> modules = new ArrayList<ParentMember>();
+            for (String include : includes) {
+                String classMethodsName = include + "::ClassMethods";
+                ParentMember module = version.getParentMember(classMethodsName);
+                if (module == null || version.getImmediateMethods(classMethodsName).isEmpty()) {
+                    module = version.getParentMember(include);
+                }
+                if (linearization != null) {
+                    linearization.dependencies.add(classMethodsName);
+                    linearization.dependencies.add(include);
+                }
+                if (module != null) {
+                    modules.add(module);
+                }
+            }
+            return modules;
+        }
+    }
+
+    /**
+     * Resolves a module or class name as Ruby would from within
+     * member's namespace, trying the innermost namespace first.
+     */
+    private static ParentMember resolve(ParentMember member, String name, RubyCacheVersion version, Linearization linearization) {
+        String namespace = member.getNamespace();
+        while (namespace != null && namespace.length() > 0) {
+            String qualifiedName = namespace + name;
+            linearization.dependencies.add(qualifiedName);
+            ParentMember parent = version.getParentMember(qualifiedName);
+            if (parent != null && parent != member) {
+                return parent;
+            }
+            int index = namespace.lastIndexOf("::", namespace.length() - 3);
+            namespace = index == -1 ? null : namespace.substring(0, index + 2);
+        }
+        linearization.dependencies.add(name);
+        ParentMember parent = version.getParentMember(name);
+        return parent != member ? parent : null;
+    }
+
+    private static final class Linearization {
+        private final List<ParentMember> ancestors;
+        private final Set<ParentMember> includedModules;
+        private final Set<String> dependencies;
+        private volatile Set<Method> methods;
+
+        Linearization(ParentMember member) {
+            ancestors = new ArrayList<ParentMember>();
+            ancestors.add(member);
+            includedModules = new HashSet<ParentMember>();
+            dependencies = new HashSet<String>();
+            dependencies.add(member.getFullName());
+            dependencies.add(member.getName());
+        }
+    }
+}
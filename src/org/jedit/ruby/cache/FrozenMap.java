@@ -0,0 +1,122 @@
+/*
+ * FrozenMap.java - Immutable map sharing entries with earlier versions
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.cache;
+
+import java.util.*;
+
+/**
+ * Immutable map published in a {@link RubyCacheVersion}. A new
+ * version is made from the previous one and the entries changed
+ * since, without copying the rest: each version is a base map
+ * shared with earlier versions plus the entries changed since
+ * the base was made. The base is only copied once the changes
+ * outgrow a quarter of it, so the cost of publishing is, on
+ * average, proportional to the number of entries changed.
+ * <p/>
+ * Values must not be null; a changed entry with a null value
+ * records that the key was removed.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class FrozenMap<V> extends AbstractMap<String, V> {
+
+    private static final int MIN_CHANGES_BEFORE_MERGE = 64;
+
+    private final Map<String, V> base;
+    private final Map<String, V> changes;
+    private final int size;
+    private volatile Set<Map.Entry<String, V>> entrySet;
+
+    static <V> FrozenMap<V> empty() {
+        return new FrozenMap<V>(new HashMap<String, V>(), new HashMap<String, V>(), 0);
+    }
+
+    private FrozenMap(Map<String, V> base, Map<String, V> changes, int size) {
+        this.base = base;
+        this.changes = changes;
+        this.size = size;
+    }
+
+    /**
+     * Returns a new version with the changed entries,
+     * leaving this version as it was.
+     *
+     * @param changed key to new value, or to null if removed
+     */
+    final FrozenMap<V> with(Map<String, V> changed) {
+        if (changed.isEmpty()) {
+            return this;
+        }
+        Map<String, V> newChanges = new HashMap<String, V>(changes);
+        int newSize = size;
+        for (Map.Entry<String, V> entry : changed.entrySet()) {
+            boolean present = containsKey(entry.getKey());
+            if (entry.getValue() == null) {
+                if (present) {
+                    newSize--;
+                }
+            } else if (!present) {
+                newSize++;
+            }
+            newChanges.put(entry.getKey(), entry.getValue());
+        }
+
+        if (newChanges.size() > Math.max(MIN_CHANGES_BEFORE_MERGE, base.size() / 4)) {
+            return new FrozenMap<V>(merge(base, newChanges), new HashMap<String, V>(), newSize);
+        } else {
+            return new FrozenMap<V>(base, newChanges, newSize);
+        }
+    }
+
+    private static <V> Map<String, V> merge(Map<String, V> base, Map<String, V> changes) {
+        Map<String, V> merged = new HashMap<String, V>(base);
+        for (Map.Entry<String, V> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                merged.remove(entry.getKey());
+            } else {
+                merged.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return merged;
+    }
+
+    public final V get(Object key) {
+        return changes.containsKey(key) ? changes.get(key) : base.get(key);
+    }
+
+    public final boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Entries are merged on first request, as iterating
+     * over the whole map takes time proportional to its size.
+     */
+    public final Set<Map.Entry<String, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = Collections.unmodifiableMap(merge(base, changes)).entrySet();
+        }
+        return entrySet;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * KeyToSet.java - Map of names to sets that can be frozen for readers
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.cache;
+
+import java.util.*;
+
+/**
+ * Map of name to set of cached members used by the
+ * cache's indexes. Frozen versions are published in a
+ * {@link RubyCacheVersion} as {@link FrozenMap}s, so that
+ * only the sets of names changed since the previous
+ * version are copied.
+ * <p/>
+ * Sets hold members by identity, so a member is removed in
+ * constant time even when it is equal to another, e.g. a method
+ * of a class reopened in another file. Frozen sets are hash sets,
+ * in which equal members appear once.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class KeyToSet<T> {
+
+    private final Map<String, Set<T>> keyToSet = new HashMap<String, Set<T>>();
+    private final Set<String> changedKeys = new HashSet<String>();
+    private FrozenMap<Set<T>> frozen = FrozenMap.empty();
+
+    /**
+     * @return set for key, or null, that must not be modified
+     */
+    final Set<T> get(String key) {
+        return keyToSet.get(key);
+    }
+
+    final boolean containsKey(String key) {
+        return keyToSet.containsKey(key);
+    }
+
+    final Collection<Set<T>> values() {
+        return keyToSet.values();
+    }
+
+    final void add(String key, T item) {
+        getSet(key).add(item);
+    }
+
+    final void addAll(String key, Collection<T> items) {
+        getSet(key).addAll(items);
+    }
+
+    /**
+     * Replaces the set for key with a copy of items.
+     */
+    final void put(String key, Collection<T> items) {
+        Set<T> set = newSet();
+        set.addAll(items);
+        keyToSet.put(key, set);
+        changedKeys.add(key);
+    }
+
+    /**
+     * Removes items from the set for key by identity,
+     * removing the key if its set becomes empty.
+     */
+    final void removeSame(String key, Collection<T> items) {
+        Set<T> set = keyToSet.get(key);
+        if (set != null) {
+            for (T item : items) {
+                set.remove(item);
+            }
+            removeIfEmpty(key, set);
+        }
+    }
+
+    final void removeSame(String key, T item) {
+        Set<T> set = keyToSet.get(key);
+        if (set != null) {
+            set.remove(item);
+            removeIfEmpty(key, set);
+        }
+    }
+
+    private void removeIfEmpty(String key, Set<T> set) {
+        if (set.isEmpty()) {
+            keyToSet.remove(key);
+        }
+        changedKeys.add(key);
+    }
+
+    private Set<T> getSet(String key) {
+        Set<T> set = keyToSet.get(key);
+        if (set == null) {
+            set = newSet();
+            keyToSet.put(key, set);
+        }
+        changedKeys.add(key);
+        return set;
+    }
+
+    private static <T> Set<T> newSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>(4));
+    }
+
+    final void clear() {
+        keyToSet.clear();
+        changedKeys.clear();
+        frozen = FrozenMap.empty();
+    }
+
+    /**
+     * Returns an unmodifiable version of the map that shares
+     * all but the sets changed since the previous version.
+     */
+    final Map<String, Set<T>> freeze() {
+        if (!changedKeys.isEmpty()) {
+            Map<String, Set<T>> changes = new HashMap<String, Set<T>>(changedKeys.size() * 2);
+            for (String key : changedKeys) {
+                Set<T> set = keyToSet.get(key);
+                changes.put(key, set == null ? null : Collections.unmodifiableSet(new HashSet<T>(set)));
+            }
+            changedKeys.clear();
+            frozen = frozen.with(changes);
+        }
+        return frozen;
+    }
+}
@@ -29,7 +29,7 @@ import java.util.*;
  */
 final class MethodToParents {
 
-    private final Map<String, Set<Member>> methodToParentMap = new HashMap<String, Set<Member>>();
+    private final KeyToSet<Member> methodToParentMap = new KeyToSet<Member>();
 
     final void add(Method method) {
         if (method.hasParentMember()) {
@@ -39,28 +39,24 @@ final class MethodToParents {
     }
 
     final void add(Method method, Member parentMember) {
-        String methodName = method.getName();
-        Set<Member> parentSet = getParentSet(methodName);
-        parentSet.add(parentMember);
+        methodToParentMap.add(method.getName(), parentMember);
     }
 
-    final List<Member> getParentList(String methodName) {
-        Set<Member> memberSet = getParentSet(methodName);
-        List<Member> members = new ArrayList<Member>(memberSet);
-        if (members.size() > 1) {
-            Collections.sort(members);
+    final void remove(Method method) {
+        if (method.hasParentMember()) {
+            remove(method, method.getParentMember());
         }
-        return members;
     }
 
-    final Set<Member> getParentSet(String methodName) {
-        if (!methodToParentMap.containsKey(methodName)) {
-            methodToParentMap.put(methodName, new HashSet<Member>());
-        }
-        return methodToParentMap.get(methodName);
+    final void remove(Method method, Member parentMember) {
+        methodToParentMap.removeSame(method.getName(), parentMember);
     }
 
     final void clear() {
         methodToParentMap.clear();
     }
+
+    final Map<String, Set<Member>> freeze() {
+        return methodToParentMap.freeze();
+    }
 }
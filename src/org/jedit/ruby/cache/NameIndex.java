@@ -0,0 +1,120 @@
+/*
+ * NameIndex.java - Sorted index of names for prefix lookups
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.cache;
+
+import java.util.*;
+
+/**
+ * Immutable sorted index of names, e.g. module and class full
+ * names, optionally also case-folded, that finds names starting
+ * with a prefix in O(log n + k) time by binary searching for
+ * the start of the prefix's range.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class NameIndex {
+
+    static final NameIndex EMPTY = new NameIndex(new TreeSet<String>(), new TreeMap<String, SortedSet<String>>());
+
+    private final String[] names;
+    private final String[] foldedNames;
+    private final String[] foldedToNames;
+
+    /**
+     * Creates index that only supports case sensitive lookups.
+     */
+    NameIndex(SortedSet<String> names) {
+        this(names, null);
+    }
+
+    /**
+     * @param names sorted names
+     * @param foldedToNames sorted lower case names to the names that fold to them
+     */
+    NameIndex(SortedSet<String> names, SortedMap<String, SortedSet<String>> foldedToNames) {
+        this.names = names.toArray(new String[names.size()]);
+
+        if (foldedToNames == null) {
+            foldedNames = null;
+            this.foldedToNames = null;
+        } else {
+            foldedNames = new String[this.names.length];
+            this.foldedToNames = new String[this.names.length];
+
+            int index = 0;
+            for (Map.Entry<String, SortedSet<String>> entry : foldedToNames.entrySet()) {
+                for (String name : entry.getValue()) {
+                    foldedNames[index] = entry.getKey();
+                    this.foldedToNames[index] = name;
+                    index++;
+                }
+            }
+        }
+    }
+
+    static String fold(String name) {
+        return name.toLowerCase();
+    }
+
+    /**
+     * @return sorted names
+     */
+    final List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * @return sorted names starting with prefix, ignoring case if requested
+     * and the index was created with case-folded names
+     */
+    final List<String> getNamesStartingWith(String prefix, boolean ignoreCase) {
+        List<String> matches = new ArrayList<String>();
+
+        if (ignoreCase && foldedNames != null) {
+            String foldedPrefix = fold(prefix);
+            for (int i = startOfRange(foldedNames, foldedPrefix); i < foldedNames.length && foldedNames[i].startsWith(foldedPrefix); i++) {
+                matches.add(foldedToNames[i]);
+            }
+            if (matches.size() > 1) {
+                Collections.sort(matches);
+            }
+        } else {
+            for (int i = startOfRange(names, prefix); i < names.length && names[i].startsWith(prefix); i++) {
+                matches.add(names[i]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return index of the first name not less than prefix
+     */
+    private static int startOfRange(String[] sortedNames, String prefix) {
+        int index = Arrays.binarySearch(sortedNames, prefix);
+        if (index < 0) {
+            return -(index + 1);
+        } else {
+            while (index > 0 && sortedNames[index - 1].equals(prefix)) {
+                index--;
+            }
+            return index;
+        }
+    }
+}
@@ -33,38 +33,49 @@ import java.util.*;
  */
 final class NameToMethods {
 
-    private final Map<String, Set<Method>> nameToMethodMap = new HashMap<String, Set<Method>>();
+    private final KeyToSet<Method> nameToMethodMap = new KeyToSet<Method>();
+    private final SortedSet<String> sortedNames = new TreeSet<String>();
+    private NameIndex nameIndex = NameIndex.EMPTY;
 
     final void add(Method method) {
         String methodName = method.getShortName();
-        Set<Method> methodSet = getMethodSet(methodName);
 
         if (methodName.equals("add_topic")) {
             RubyPlugin.log("adding: " + methodName, getClass());
         }
 
-        if (!methodSet.contains(method)) {
-            methodSet.add(method);
+        if (sortedNames.add(methodName)) {
+            nameIndex = null;
         }
+        nameToMethodMap.add(methodName, method);
     }
 
-    final List<Method> getMethods(String methodName) {
-        Set<Method> methodSet = getMethodSet(methodName);
-        List<Method> members = new ArrayList<Method>(methodSet);
-        if (members.size() > 1) {
-            Collections.sort(members);
-        }
-        return members;
-    }
+    final void remove(Method method) {
+        String methodName = method.getShortName();
+        nameToMethodMap.removeSame(methodName, method);
 
-    private Set<Method> getMethodSet(String methodName) {
-        if (!nameToMethodMap.containsKey(methodName)) {
-            nameToMethodMap.put(methodName, new HashSet<Method>());
+        if (!nameToMethodMap.containsKey(methodName) && sortedNames.remove(methodName)) {
+            nameIndex = null;
         }
-        return nameToMethodMap.get(methodName);
     }
 
     final void clear() {
         nameToMethodMap.clear();
+        sortedNames.clear();
+        nameIndex = NameIndex.EMPTY;
+    }
+
+    /**
+     * @return index of method names, rebuilt only when names have changed
+     */
+    final NameIndex freezeNameIndex() {
+        if (nameIndex == null) {
+            nameIndex = new NameIndex(sortedNames);
+        }
+        return nameIndex;
+    }
+
+    final Map<String, Set<Method>> freeze() {
+        return nameToMethodMap.freeze();
     }
 }
@@ -19,7 +19,6 @@
  */
 package org.jedit.ruby.cache;
 
-import org.jedit.ruby.ast.Member;
 import org.jedit.ruby.ast.ParentMember;
 import org.jedit.ruby.ast.ClassMember;
 import org.jedit.ruby.ast.MemberVisitorAdapter;
@@ -37,16 +36,107 @@ final class NameToParents {
 
     private final Map<String, ParentMember> fullNameToMember = new HashMap<String, ParentMember>();
     private final Map<String, ParentMember> nameToMember = new HashMap<String, ParentMember>();
+    private final Map<String, Definitions> fullNameToDefinitions = new HashMap<String, Definitions>();
+    private final SortedSet<String> sortedFullNames = new TreeSet<String>();
+    private final SortedMap<String, SortedSet<String>> foldedToFullNames = new TreeMap<String, SortedSet<String>>();
+    private final Set<String> changedFullNames = new HashSet<String>();
+    private final Set<String> changedNames = new HashSet<String>();
     private final ClassVisitor classVisitor = new ClassVisitor();
-
-    private List<Member> allMembers;
-    private ParentToImmediateMethods parentToImmediateMethods;
+    private FrozenMap<ParentMember> frozenFullNames = FrozenMap.empty();
+    private FrozenMap<ParentMember> frozenNames = FrozenMap.empty();
+    private NameIndex nameIndex = NameIndex.EMPTY;
 
     final void add(ParentMember member) {
         String fullName = member.getFullName();
         String name = member.getName();
         fullNameToMember.put(fullName, member);
         nameToMember.put(name, member);
+        changedFullNames.add(fullName);
+        changedNames.add(name);
+        addSortedName(fullName);
+
+        Definitions definitions = fullNameToDefinitions.get(fullName);
+        if (definitions == null) {
+            definitions = new Definitions();
+            fullNameToDefinitions.put(fullName, definitions);
+        }
+        definitions.add(member);
+    }
+
+    /**
+     * Removes member, replacing it with the most recently
+     * added remaining definition of the same module or class,
+     * e.g. when a class is reopened in another file.
+     */
+    final void remove(ParentMember member) {
+        String fullName = member.getFullName();
+        Definitions definitions = fullNameToDefinitions.get(fullName);
+        ParentMember definition = null;
+        if (definitions != null) {
+            definitions.remove(member);
+            definition = definitions.getLast();
+            if (definition == null) {
+                fullNameToDefinitions.remove(fullName);
+            }
+        }
+        if (replace(fullNameToMember, fullName, member, definition)) {
+            changedFullNames.add(fullName);
+        }
+        if (replace(nameToMember, member.getName(), member, definition)) {
+            changedNames.add(member.getName());
+        }
+        if (definition == null) {
+            removeSortedName(fullName);
+        }
+    }
+
+    private void addSortedName(String fullName) {
+        if (sortedFullNames.add(fullName)) {
+            String folded = NameIndex.fold(fullName);
+            SortedSet<String> fullNames = foldedToFullNames.get(folded);
+            if (fullNames == null) {
+                fullNames = new TreeSet<String>();
+                foldedToFullNames.put(folded, fullNames);
+            }
+            fullNames.add(fullName);
+            nameIndex = null;
+        }
+    }
+
+    private void removeSortedName(String fullName) {
+        if (sortedFullNames.remove(fullName)) {
+            String folded = NameIndex.fold(fullName);
+            SortedSet<String> fullNames = foldedToFullNames.get(folded);
+            fullNames.remove(fullName);
+            if (fullNames.isEmpty()) {
+                foldedToFullNames.remove(folded);
+            }
+            nameIndex = null;
+        }
+    }
+
+    /**
+     * @return true if key was mapped to member and has been replaced
+     */
+    private static boolean replace(Map<String, ParentMember> keyToMember, String key, ParentMember member, ParentMember definition) {
+        if (keyToMember.get(key) == member) {
+            if (definition == null) {
+                keyToMember.remove(key);
+            } else {
+                keyToMember.put(key, definition);
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * @return all definitions of the module or class with the given full name
+     */
+    final List<ParentMember> getDefinitions(String fullName) {
+        Definitions definitions = fullNameToDefinitions.get(fullName);
+        return definitions == null ? new ArrayList<ParentMember>() : definitions.asList();
     }
 
     final ClassMember getClass(String name) {
@@ -73,37 +163,120 @@ final class NameToParents {
     final void clear() {
         fullNameToMember.clear();
         nameToMember.clear();
+        fullNameToDefinitions.clear();
+        sortedFullNames.clear();
+        foldedToFullNames.clear();
+        nameIndex = NameIndex.EMPTY;
+        changedFullNames.clear();
+        changedNames.clear();
+        frozenFullNames = FrozenMap.empty();
+        frozenNames = FrozenMap.empty();
     }
 
-    final List<Member> getAllMembers() {
-        if (allMembers == null) {
-            allMembers = new ArrayList<Member>();
+    final Collection<ParentMember> getAllParents() {
+        return fullNameToMember.values();
+    }
 
-            for (String parentName : getAllParentNames()) {
-                allMembers.add(fullNameToMember.get(parentName));
-                allMembers.addAll(parentToImmediateMethods.getImmediateMethodList(parentName));
-            }
+    /**
+     * @return index of full names, rebuilt only when names have changed
+     */
+    final NameIndex freezeNameIndex() {
+        if (nameIndex == null) {
+            nameIndex = new NameIndex(sortedFullNames, foldedToFullNames);
         }
+        return nameIndex;
+    }
 
-        return allMembers;
+    /**
+     * @return unmodifiable version of full names to members,
+     * sharing the names unchanged since the previous version
+     */
+    final Map<String, ParentMember> freezeFullNames() {
+        frozenFullNames = freeze(frozenFullNames, fullNameToMember, changedFullNames);
+        return frozenFullNames;
     }
 
-    final List<String> getAllParentNames() {
-        List<String> names = new ArrayList<String>(fullNameToMember.keySet());
-        Collections.sort(names);
-        return names;
+    final Map<String, ParentMember> freezeNames() {
+        frozenNames = freeze(frozenNames, nameToMember, changedNames);
+        return frozenNames;
     }
 
-    final Collection<ParentMember> getAllParents() {
-        return fullNameToMember.values();
+    private static FrozenMap<ParentMember> freeze(FrozenMap<ParentMember> frozen, Map<String, ParentMember> keyToMember, Set<String> changedKeys) {
+        if (!changedKeys.isEmpty()) {
+            Map<String, ParentMember> changes = new HashMap<String, ParentMember>(changedKeys.size() * 2);
+            for (String key : changedKeys) {
+                changes.put(key, keyToMember.get(key));
+            }
+            changedKeys.clear();
+            frozen = frozen.with(changes);
+        }
+        return frozen;
     }
 
-    final void reset() {
-        allMembers = null;
+    /**
+     * Definitions of a module or class in the order added. As
+     * definitions are equal to each other they are held by
+     * identity, so each is removed in constant time.
+     */
+    private static final class Definitions {
+        private final Map<ParentMember, Definition> memberToDefinition = new IdentityHashMap<ParentMember, Definition>(2);
+        private Definition first;
+        private Definition last;
+
+        final void add(ParentMember member) {
+            if (!memberToDefinition.containsKey(member)) {
+                Definition definition = new Definition(member, last);
+                if (last == null) {
+                    first = definition;
+                } else {
+                    last.next = definition;
+                }
+                last = definition;
+                memberToDefinition.put(member, definition);
+            }
+        }
+
+        final void remove(ParentMember member) {
+            Definition definition = memberToDefinition.remove(member);
+            if (definition != null) {
+                if (definition.previous == null) {
+                    first = definition.next;
+                } else {
+                    definition.previous.next = definition.next;
+                }
+                if (definition.next == null) {
+                    last = definition.previous;
+                } else {
+                    definition.next.previous = definition.previous;
+                }
+            }
+        }
+
+        /**
+         * @return most recently added definition, or null if none remain
+         */
+        final ParentMember getLast() {
+            return last == null ? null : last.member;
+        }
+
+        final List<ParentMember> asList() {
+            List<ParentMember> members = new ArrayList<ParentMember>(memberToDefinition.size());
+            for (Definition definition = first; definition != null; definition = definition.next) {
+                members.add(definition.member);
+            }
+            return members;
+        }
     }
 
-    public final void setParentToImmediateMethods(ParentToImmediateMethods parentToImmediateMethods) {
-        this.parentToImmediateMethods = parentToImmediateMethods;
+    private static final class Definition {
+        private final ParentMember member;
+        private Definition previous;
+        private Definition next;
+
+        Definition(ParentMember member, Definition previous) {
+            this.member = member;
+            this.previous = previous;
+        }
     }
 
     private static final class ClassVisitor extends MemberVisitorAdapter {
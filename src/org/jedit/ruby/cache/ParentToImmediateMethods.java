@@ -29,55 +29,26 @@ import java.util.*;
  */
 final class ParentToImmediateMethods {
 
-    private final Map<String, Set<Method>> fullNameToImmediateMethods = new HashMap<String, Set<Method>>();
-    private final Map<String, Set<Method>> nameToImmediateMethods = new HashMap<String, Set<Method>>();
-
-    final List<Method> getImmediateMethodList(String memberName) {
-        Set<Method> methodSet = getImmediateMethodSet(memberName);
-        List<Method> methods = new ArrayList<Method>(methodSet);
-
-        if (methods.size() > 0) {
-            Collections.sort(methods);
-        }
-
-        return methods;
-    }
-
-    private Set<Method> getImmediateMethodSet(String memberName) {
-        Set<Method> methodSet = fullNameToImmediateMethods.get(memberName);
-        if (methodSet == null) {
-            methodSet = nameToImmediateMethods.get(memberName);
-        }
-        if (methodSet == null) {
-            methodSet = new HashSet<Method>();
-        }
-        return methodSet;
-    }
+    private final KeyToSet<Method> fullNameToImmediateMethods = new KeyToSet<Method>();
 
     /**
      * Note: Have to addMembers methods separately because there
      * may be some classes defined across more than one file.
      */
     final void add(ParentMember member) {
-        Set<Method> methods = member.getMethods();
-        String fullName = member.getFullName();
-        String name = member.getName();
-        load(fullName, methods, name, fullNameToImmediateMethods, nameToImmediateMethods);
+        fullNameToImmediateMethods.addAll(member.getFullName(), member.getMethods());
     }
 
-    private static void load(String fullName, Set<Method> methods, String name, Map<String, Set<Method>> fullNameToMethods, Map<String, Set<Method>> nameToMethods) {
-        if (fullNameToMethods.containsKey(fullName)) {
-            fullNameToMethods.get(fullName).addAll(methods);
-            nameToMethods.get(name).addAll(methods);
-        } else {
-            fullNameToMethods.put(fullName, methods);
-            nameToMethods.put(name, methods);
-        }
+    final void remove(ParentMember member) {
+        fullNameToImmediateMethods.removeSame(member.getFullName(), member.getMethods());
     }
 
     final void clear() {
         fullNameToImmediateMethods.clear();
-        nameToImmediateMethods.clear();
+    }
+
+    final Map<String, Set<Method>> freezeFullNames() {
+        return fullNameToImmediateMethods.freeze();
     }
 
 }
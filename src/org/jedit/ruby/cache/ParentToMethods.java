@@ -29,36 +29,8 @@ import java.util.*;
  */
 final class ParentToMethods {
 
-    private final Map<String, Set<Method>> fullNameToMethods = new HashMap<String, Set<Method>>();
-    private final Map<String, Set<Method>> nameToMethods = new HashMap<String, Set<Method>>();
-    private NameToParents nameToParents;
-    private Set<Method> allMethods;
-
-    final void setNameToParents(NameToParents nameToParents) {
-        this.nameToParents = nameToParents;
-    }
-
-    final List<Method> getMethodList(String memberName) {
-        Set<Method> methodSet = getMethodSet(memberName);
-        List<Method> methods = new ArrayList<Method>(methodSet);
-
-        if (methods.size() > 0) {
-            Collections.sort(methods);
-        }
-
-        return methods;
-    }
-
-    final Set<Method> getMethodSet(String memberName) {
-        Set<Method> methodSet = fullNameToMethods.get(memberName);
-        if (methodSet == null) {
-            methodSet = nameToMethods.get(memberName);
-        }
-        if (methodSet == null) {
-            methodSet = new HashSet<Method>();
-        }
-        return methodSet;
-    }
+    private final KeyToSet<Method> fullNameToMethods = new KeyToSet<Method>();
+    private final KeyToSet<Method> nameToMethods = new KeyToSet<Method>();
 
     /**
      * Note: Have to addMembers methods separately because there
@@ -66,44 +38,46 @@ final class ParentToMethods {
      */
     final void add(ParentMember member) {
         Set<Method> methods = member.getMethods();
-        add(member, methods);
-    }
-
-    final void add(ParentMember member, Set<Method> methods) {
         String fullName = member.getFullName();
         String name = member.getName();
 
         load(fullName, methods, name, fullNameToMethods, nameToMethods);
     }
 
-    private static void load(String fullName, Set<Method> methods, String name, Map<String, Set<Method>> fullNameToMethods, Map<String, Set<Method>> nameToMethods) {
+    private static void load(String fullName, Set<Method> methods, String name, KeyToSet<Method> fullNameToMethods, KeyToSet<Method> nameToMethods) {
         if (fullNameToMethods.containsKey(fullName)) {
-            fullNameToMethods.get(fullName).addAll(methods);
-            nameToMethods.get(name).addAll(methods);
+            fullNameToMethods.addAll(fullName, methods);
+            nameToMethods.addAll(name, methods);
         } else {
             fullNameToMethods.put(fullName, methods);
             nameToMethods.put(name, methods);
         }
     }
 
+    final void remove(ParentMember member) {
+        Set<Method> methods = member.getMethods();
+        fullNameToMethods.removeSame(member.getFullName(), methods);
+        nameToMethods.removeSame(member.getName(), methods);
+    }
+
     final void clear() {
         fullNameToMethods.clear();
         nameToMethods.clear();
     }
 
     final Set<Method> getAllMethods() {
-        if(allMethods == null) {
-            allMethods = new HashSet<Method>();
-
-            for (String parentName : nameToParents.getAllParentNames()) {
-                allMethods.addAll(getMethodList(parentName));
-            }
+        Set<Method> allMethods = new HashSet<Method>();
+        for (Set<Method> methods : fullNameToMethods.values()) {
+            allMethods.addAll(methods);
         }
+        return allMethods;
+    }
 
-        return new HashSet<Method>(allMethods);
+    final Map<String, Set<Method>> freezeFullNames() {
+        return fullNameToMethods.freeze();
     }
 
-    final void resetAllMethodsList() {
-        allMethods = null;
+    final Map<String, Set<Method>> freezeNames() {
+        return nameToMethods.freeze();
     }
 }
@@ -0,0 +1,83 @@
+/*
+ * PathToMembers.java - 
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.cache;
+
+import org.jedit.ruby.ast.*;
+
+import java.util.*;
+
+/**
+ * Reverse index of file path to the modules, classes
+ * and methods the file contributed to the cache, so a
+ * file's members can be removed when it changes.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class PathToMembers {
+
+    private final Map<String, Entries> pathToEntries = new HashMap<String, Entries>();
+
+    final void add(String path, RubyMembers members) {
+        final Entries entries = new Entries();
+        members.visitMembers(new MemberVisitorAdapter() {
+            public void handleModule(Module module) {
+                entries.parents.add(module);
+            }
+
+            public void handleClass(ClassMember classMember) {
+                entries.parents.add(classMember);
+            }
+
+            public void handleMethod(Method method) {
+                entries.methods.add(method);
+            }
+        });
+        pathToEntries.put(path, entries);
+    }
+
+    final boolean contains(String path) {
+        return pathToEntries.containsKey(path);
+    }
+
+    /**
+     * @return parents contributed by the path, or an empty list
+     */
+    final List<ParentMember> getParents(String path) {
+        Entries entries = pathToEntries.get(path);
+        return entries == null ? new ArrayList<ParentMember>() : entries.parents;
+    }
+
+    /**
+     * @return methods contributed by the path, or an empty list
+     */
+    final List<Method> getMethods(String path) {
+        Entries entries = pathToEntries.get(path);
+        return entries == null ? new ArrayList<Method>() : entries.methods;
+    }
+
+    final void remove(String path) {
+        pathToEntries.remove(path);
+    }
+
+    private static final class Entries {
+        final List<ParentMember> parents = new ArrayList<ParentMember>();
+        final List<Method> methods = new ArrayList<Method>();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * ProjectIndexFile.java - Saved members of project Ruby files
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.cache;
+
+import org.jedit.ruby.RubyPlugin;
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.MemberCodec;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Saves the members parsed from each project file, so that on the
+ * next start {@link ProjectIndexer} only reparses files that have
+ * changed since.
+ * <p/>
+ * Each file's record holds its size and modification time, and the
+ * length and hash of its text. A record whose size and modification
+ * time match the file is used without reading the file; one whose
+ * modification time alone differs is used if the file's text still
+ * has the same hash, e.g. after a checkout that rewrote the file.
+ * <p/>
+ * The saved records are only valid for the same project roots, as
+ * given by the index file key.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class ProjectIndexFile {
+
+    private static final int MAGIC = 0x52506958;
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final String key;
+    private final ConcurrentMap<String, Record> pathToRecord;
+    private volatile boolean changed;
+
+    /**
+     * @param file index file
+     * @param key identifies the project roots the index is valid for
+     */
+    public ProjectIndexFile(File file, String key) {
+        this.file = file;
+        this.key = key;
+        pathToRecord = new ConcurrentHashMap<String, Record>();
+    }
+
+    /**
+     * Reads the index file if it exists and matches this index's key.
+     *
+     * @return true if records were read from file
+     */
+    public final boolean read() {
+        boolean restored = false;
+        if (file.exists()) {
+            try {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    restored = read(input);
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                RubyPlugin.error(e, getClass());
+                restored = false;
+            }
+            if (!restored) {
+                pathToRecord.clear();
+            }
+        }
+        return restored;
+    }
+
+    private boolean read(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION || !input.readUTF().equals(key)) {
+            return false;
+        }
+
+        MemberCodec codec = MemberCodec.readStrings(input);
+        int recordCount = input.readInt();
+        for (int i = 0; i < recordCount; i++) {
+            String path = input.readUTF();
+            long size = input.readLong();
+            long lastModified = input.readLong();
+            int length = input.readInt();
+            long hash = input.readLong();
+            Member[] members = input.readBoolean() ? codec.readMembers(input) : null;
+            pathToRecord.put(path, new Record(size, lastModified, length, hash, members));
+        }
+        return true;
+    }
+
+    /**
+     * Writes the index to file if it has changed since read or
+     * last written. Records of members that can't be written are
+     * left out, so their files are parsed again on the next start.
+     */
+    public final void write() {
+        if (changed) {
+            changed = false;
+            File temporaryFile = new File(file.getPath() + ".tmp");
+            try {
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+                try {
+                    write(output);
+                } finally {
+                    output.close();
+                }
+                file.delete();
+                if (!temporaryFile.renameTo(file)) {
+                    throw new IOException("can't rename " + temporaryFile + " to " + file);
+                }
+            } catch (IOException e) {
+                RubyPlugin.error(e, getClass());
+                temporaryFile.delete();
+            }
+        }
+    }
+
+    private void write(DataOutputStream output) throws IOException {
+        MemberCodec codec = new MemberCodec();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(bytes);
+        int recordCount = 0;
+
+        for (Map.Entry<String, Record> entry : pathToRecord.entrySet()) {
+            Record record = entry.getValue();
+            if (record.members == null || MemberCodec.canWrite(record.members)) {
+                records.writeUTF(entry.getKey());
+                records.writeLong(record.size);
+                records.writeLong(record.lastModified);
+                records.writeInt(record.length);
+                records.writeLong(record.hash);
+                records.writeBoolean(record.members != null);
+                if (record.members != null) {
+                    codec.writeMembers(record.members, records);
+                }
+                recordCount++;
+            }
+        }
+        records.flush();
+
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(key);
+        codec.writeStrings(output);
+        output.writeInt(recordCount);
+        bytes.writeTo(output);
+    }
+
+    final Record get(String path) {
+        return pathToRecord.get(path);
+    }
+
+    final void put(String path, Record record) {
+        pathToRecord.put(path, record);
+        changed = true;
+    }
+
+    /**
+     * Removes records of files other than those supplied.
+     */
+    final void retain(Set<String> paths) {
+        if (pathToRecord.keySet().retainAll(paths)) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Members parsed from a file, or null members if the file
+     * didn't parse, with what identifies the file's content.
+     */
+    static final class Record {
+        private final long size;
+        private final long lastModified;
+        private final int length;
+        private final long hash;
+        private final Member[] members;
+
+        Record(long size, long lastModified, int length, long hash, Member[] members) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+            this.members = members;
+        }
+
+        final boolean isCurrent(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        final boolean matches(int length, long hash) {
+            return this.length == length && this.hash == hash;
+        }
+
+        final int getLength() {
+            return length;
+        }
+
+        final Member[] getMembers() {
+            return members;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * ProjectIndexer.java - Indexes project Ruby files into the RubyCache
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.cache;
+
+import org.jedit.ruby.RubyPlugin;
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.Problem;
+import org.jedit.ruby.ast.RubyMembers;
+import org.jedit.ruby.parser.RubyParser;
+import org.jedit.ruby.utils.CommandUtils;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Indexes the Ruby files under project roots into the
+ * {@link RubyCache}, so that completion and find declaration
+ * know the project's modules, classes and methods whether or
+ * not their files are open.
+ * <p/>
+ * Files are parsed in parallel on a pool of worker threads and
+ * each pass is published as a single version of the cache. The
+ * indexer then polls the roots, reparsing files whose
+ * modification time has changed and removing deleted files.
+ * <p/>
+ * When given a {@link ProjectIndexFile}, members of files that
+ * haven't changed since the index file was written are taken
+ * from it rather than parsed again.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class ProjectIndexer {
+
+    /**
+     * Directories indexed under a root when present,
+     * otherwise the whole root is indexed.
+     */
+    private static final String[] SOURCE_DIRECTORIES = {"app", "lib", "spec", "test", "vendor"};
+
+    private static final String INDEX_FILE = "project.index";
+
+    private static Poller poller;
+
+    private final List<File> roots;
+    private final ExecutorService workers;
+    private final Map<String, Long> pathToLastModified;
+    private final ProjectIndexFile indexFile;
+    private boolean indexFileRead;
+    private RubyCache cache;
+
+    public ProjectIndexer(List<File> roots, int workerCount) {
+        this(roots, workerCount, null);
+    }
+
+    /**
+     * @param indexFile saved members of project files, or null
+     */
+    public ProjectIndexer(List<File> roots, int workerCount, ProjectIndexFile indexFile) {
+        this.roots = roots;
+        this.indexFile = indexFile;
+        pathToLastModified = new HashMap<String, Long>();
+        workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RubyPlugin index worker");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Indexes the project roots in the background, replacing any
+     * indexing already running, then polls them for changes.
+     */
+    public static synchronized void indexProject(List<File> roots, int pollSeconds) {
+        stopIndexing();
+        if (!roots.isEmpty()) {
+            int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            ProjectIndexFile indexFile = new ProjectIndexFile(CommandUtils.getStoragePath(INDEX_FILE), roots.toString());
+            poller = new Poller(new ProjectIndexer(roots, workerCount, indexFile), pollSeconds * 1000L);
+            poller.start();
+        }
+    }
+
+    public static synchronized void stopIndexing() {
+        if (poller != null) {
+            poller.cancel();
+            poller = null;
+        }
+    }
+
+    /**
+     * Parses files added or modified since the last update and
+     * removes members of files deleted since. Everything is
+     * indexed again if the cache has been reset meanwhile,
+     * e.g. by RDoc being reloaded.
+     *
+     * @return number of files parsed, which excludes files
+     * whose members were taken from the index file
+     */
+    public final int update() throws InterruptedException {
+        if (indexFile != null && !indexFileRead) {
+            indexFile.read();
+            indexFileRead = true;
+        }
+
+        RubyCache current = RubyCache.instance();
+        if (current != cache) {
+            cache = current;
+            pathToLastModified.clear();
+        }
+
+        Map<String, Long> files = new HashMap<String, Long>();
+        for (File root : roots) {
+            findSourceFiles(root.getAbsoluteFile(), files);
+        }
+
+        List<Future<Boolean>> tasks = new ArrayList<Future<Boolean>>();
+        int parsedCount = 0;
+        cache.beginUpdate();
+        try {
+            for (String path : pathToLastModified.keySet()) {
+                if (!files.containsKey(path)) {
+                    cache.removeMembers(path);
+                }
+            }
+            for (Map.Entry<String, Long> entry : files.entrySet()) {
+                String path = entry.getKey();
+                long lastModified = entry.getValue();
+
+                if (!entry.getValue().equals(pathToLastModified.get(path))) {
+                    File file = new File(path);
+                    ProjectIndexFile.Record record = indexFile != null ? indexFile.get(path) : null;
+
+                    if (record != null && record.isCurrent(file.length(), lastModified)) {
+                        addMembers(record.getMembers(), record.getLength(), path, cache);
+                    } else {
+                        tasks.add(workers.submit(new IndexTask(file, lastModified, record, cache, indexFile)));
+                    }
+                }
+            }
+            for (Future<Boolean> task : tasks) {
+                try {
+                    if (task.get()) {
+                        parsedCount++;
+                    }
+                } catch (ExecutionException e) {
+                    log("indexing failed: " + e.getCause());
+                }
+            }
+        } finally {
+            cache.endUpdate();
+        }
+
+        pathToLastModified.clear();
+        pathToLastModified.putAll(files);
+
+        if (indexFile != null) {
+            indexFile.retain(files.keySet());
+            indexFile.write();
+        }
+        return parsedCount;
+    }
+
+    public final void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private static void findSourceFiles(File root, Map<String, Long> files) {
+        boolean found = false;
+        for (String name : SOURCE_DIRECTORIES) {
+            File directory = new File(root, name);
+            if (directory.isDirectory()) {
+                addSourceFiles(directory, files);
+                found = true;
+            }
+        }
+        if (!found) {
+            addSourceFiles(root, files);
+        }
+    }
+
+    private static void addSourceFiles(File directory, Map<String, Long> files) {
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                String name = child.getName();
+                if (child.isDirectory()) {
+                    if (!name.startsWith(".")) {
+                        addSourceFiles(child, files);
+                    }
+                } else if (name.endsWith(".rb") || name.endsWith(".rake")) {
+                    files.put(child.getPath(), child.lastModified());
+                }
+            }
+        }
+    }
+
+    private static String readFile(File file) {
+        StringBuffer buffer = new StringBuffer();
+        try {
+            Reader reader = new FileReader(file);
+            try {
+                char[] chars = new char[4096];
+                int length;
+                while (-1 != (length = reader.read(chars))) {
+                    buffer.append(chars, 0, length);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            log("can't read " + file + ": " + e.getMessage());
+            return null;
+        }
+        return buffer.toString();
+    }
+
+    private static void addMembers(Member[] members, int length, String path, RubyCache cache) {
+        if (members != null) {
+            cache.addMembers(new RubyMembers(members, new ArrayList<Problem>(), length), path);
+        }
+    }
+
+    private static void log(String message) {
+        RubyPlugin.log(message, ProjectIndexer.class);
+    }
+
+    /**
+     * Parses a file without going through the parse cache, which
+     * is kept for open buffers, and adds its members to the cache.
+     * The file isn't parsed if its text hashes the same as when
+     * its index file record was made.
+     */
+    private static final class IndexTask implements Callable<Boolean> {
+        private final File file;
+        private final long lastModified;
+        private final ProjectIndexFile.Record record;
+        private final RubyCache cache;
+        private final ProjectIndexFile indexFile;
+
+        IndexTask(File file, long lastModified, ProjectIndexFile.Record record, RubyCache cache, ProjectIndexFile indexFile) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.record = record;
+            this.cache = cache;
+            this.indexFile = indexFile;
+        }
+
+        public final Boolean call() {
+            long size = file.length();
+            String text = readFile(file);
+            if (text == null || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+
+            String path = file.getPath();
+            long hash = RubyParser.getHash(text);
+            boolean parsed = record == null || !record.matches(text.length(), hash);
+            Member[] members;
+
+            if (parsed) {
+                List<Member> memberList = RubyParser.getMembersAsList(text, path, null);
+                members = memberList != null ? memberList.toArray(new Member[memberList.size()]) : null;
+            } else {
+                members = record.getMembers();
+            }
+
+            if (indexFile != null) {
+                indexFile.put(path, new ProjectIndexFile.Record(size, lastModified, text.length(), hash, members));
+            }
+            addMembers(members, text.length(), path, cache);
+            return parsed;
+        }
+    }
+
+    private static final class Poller extends Thread {
+        private final ProjectIndexer indexer;
+        private final long pollMillis;
+
+        Poller(ProjectIndexer indexer, long pollMillis) {
+            super("RubyPlugin project indexer");
+            setDaemon(true);
+            setPriority(Thread.MIN_PRIORITY);
+            setContextClassLoader(ProjectIndexer.class.getClassLoader());
+            this.indexer = indexer;
+            this.pollMillis = pollMillis;
+        }
+
+        public final void run() {
+            try {
+                long start = System.currentTimeMillis();
+                int count = indexer.update();
+                long millis = Math.max(1, System.currentTimeMillis() - start);
+                log("indexed " + count + " files in " + millis + "ms, " + (count * 1000L / millis) + " files/sec");
+
+                while (!isInterrupted()) {
+                    sleep(pollMillis);
+                    count = indexer.update();
+                    if (count > 0) {
+                        log("reindexed " + count + " changed files");
+                    }
+                }
+            } catch (InterruptedException e) {
+                log("project indexing stopped");
+            } finally {
+                indexer.shutdown();
+            }
+        }
+
+        final void cancel() {
+            indexer.shutdown();
+            interrupt();
+        }
+    }
+}
@@ -26,10 +26,19 @@ import org.jedit.ruby.RubyPlugin;
 import java.util.*;
 
 /**
+ * Cache of Ruby methods, classes and modules.
+ * <p/>
+ * Writers update the indexes while holding the cache's lock
+ * and then publish an immutable {@link RubyCacheVersion}.
+ * Readers use the latest published version without locking
+ * and are given unmodifiable views of it.
+ *
  * @author robmckinnon at users.sourceforge.net
  */
 public final class RubyCache {
 
+    private static final String APPLICATION_CONTROLLER = "ApplicationController";
+
     private static RubyCache instance;
 
     private final NameToMethods nameToMethods;
@@ -37,7 +46,13 @@ public final class RubyCache {
     private final MethodToParents methodToParents;
     private final ParentToMethods parentToMethods;
     private final ParentToImmediateMethods parentToImmediateMethods;
-    private final Map<String, RubyMembers> pathToMembers;
+    private final PathToMembers pathToMembers;
+    private final Set<String> changedParentNames;
+    private final Ancestors ancestors;
+    private RubyCacheSnapshot snapshot;
+    private int updates;
+    private volatile RubyCacheVersion version = RubyCacheVersion.EMPTY;
+    private volatile boolean populated;
 
     public static synchronized void resetCache() {
         instance = new RubyCache();
@@ -53,9 +68,52 @@ public final class RubyCache {
         methodToParents = new MethodToParents();
         parentToMethods = new ParentToMethods();
         parentToImmediateMethods = new ParentToImmediateMethods();
-        pathToMembers = new HashMap<String, RubyMembers>();
-        nameToParents.setParentToImmediateMethods(parentToImmediateMethods);
-        parentToMethods.setNameToParents(nameToParents);
+        pathToMembers = new PathToMembers();
+        changedParentNames = new HashSet<String>();
+        ancestors = new Ancestors();
+    }
+
+    /**
+     * Defers publishing changes to readers until the matching
+     * call to {@link #endUpdate()}, so that a batch of changes,
+     * e.g. loading RDoc, is published as a single version.
+     */
+    public final synchronized void beginUpdate() {
+        updates++;
+    }
+
+    public final synchronized void endUpdate() {
+        updates--;
+        changed();
+    }
+
+    /**
+     * Publishes the changes made so far in an update, so that
+     * readers see the progress of a long update, e.g. loading RDoc.
+     */
+    public final synchronized void publishUpdate() {
+        publish();
+    }
+
+    private void changed() {
+        if (updates == 0) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        int ancestorsGeneration = ancestors.invalidate(changedParentNames);
+        changedParentNames.clear();
+        version = new RubyCacheVersion(nameToParents.freezeFullNames(),
+                nameToParents.freezeNames(),
+                nameToMethods.freeze(),
+                methodToParents.freeze(),
+                parentToMethods.freezeFullNames(),
+                parentToMethods.freezeNames(),
+                parentToImmediateMethods.freezeFullNames(),
+                nameToParents.freezeNameIndex(),
+                nameToMethods.freezeNameIndex(),
+                ancestors, ancestorsGeneration);
     }
 
     public final synchronized void addMembers(String text, String path) {
@@ -63,68 +121,226 @@ public final class RubyCache {
         addMembers(members, path);
     }
 
+    /**
+     * Replaces members previously added with the given path,
+     * unless the members contain errors, in which case the
+     * last members parsed without errors are kept.
+     */
     public final synchronized void addMembers(RubyMembers members, String path) {
         if (!members.containsErrors()) {
-            add(members, path);
+            replace(members, path);
+            changed();
         }
     }
 
+    /**
+     * Removes members previously added with the given path
+     * and adds the supplied members in their place.
+     */
+    public final synchronized void replaceMembers(RubyMembers members, String path) {
+        replace(members, path);
+        changed();
+    }
+
+    private void replace(RubyMembers members, String path) {
+        remove(path);
+        add(members, path);
+    }
+
     public final synchronized void addClass(ClassMember parent, String path) {
         Member[] members = new Member[1];
         members[0] = parent;
         RubyMembers rubyMembers = new RubyMembers(members, new ArrayList<Problem>(), 0);
-        RubyCache.instance().addMembers(rubyMembers, path);
+        addMembers(rubyMembers, path);
+    }
+
+    /**
+     * Removes members previously added with the given path,
+     * in time proportional to the number of members removed.
+     * Modules or classes reopened in other files keep the
+     * methods defined in those files.
+     */
+    public final synchronized void removeMembers(String path) {
+        remove(path);
+        changed();
+    }
+
+    private void remove(String path) {
+        if (pathToMembers.contains(path)) {
+            List<ParentMember> parents = pathToMembers.getParents(path);
+            for (Method method : pathToMembers.getMethods(path)) {
+                methodToParents.remove(method);
+                nameToMethods.remove(method);
+            }
+            for (ParentMember parent : parents) {
+                removeParent(parent);
+            }
+            pathToMembers.remove(path);
+
+            for (ParentMember parent : parents) {
+                for (ParentMember definition : nameToParents.getDefinitions(parent.getFullName())) {
+                    restoreDefinition(definition);
+                }
+            }
+        }
+    }
+
+    private void removeParent(ParentMember member) {
+        parentToImmediateMethods.remove(member);
+        parentToMethods.remove(member);
+        nameToParents.remove(member);
+        parentChanged(member);
+    }
+
+    /**
+     * Records that the module or class has changed, so that
+     * memoized ancestors resolved from it are discarded
+     * when the next version is published.
+     */
+    private void parentChanged(ParentMember member) {
+        changedParentNames.add(member.getFullName());
+        changedParentNames.add(member.getName());
+    }
+
+    /**
+     * Populates the classes added after the cache was populated,
+     * e.g. a layer of RDoc loaded again: marks the methods of
+     * modules included by Rails base classes as class methods,
+     * populates return types, and adds the ApplicationController
+     * if it is missing.
+     * <p/>
+     * Implicit includes and return types are resolved against the
+     * published version, so it is published first, as it is when
+     * populating superclass methods. It is published again once
+     * methods are marked, discarding ancestors memoized since.
+     */
+    public final synchronized void populateAddedClasses(List<ClassMember> classes) {
+        publish();
+        markImplicitClassMethods();
+        publish();
+        for (ClassMember classMember : classes) {
+            for (Method method : classMember.getMethods()) {
+                method.populateReturnTypes();
+            }
+        }
+        remove(APPLICATION_CONTROLLER);
+        addApplicationController();
+        changed();
+    }
+
+    /**
+     * Returns true once {@link #populateSuperClassMethods()} has
+     * completed, i.e. when the RDoc has finished loading.
+     */
+    public final boolean isPopulated() {
+        return populated;
+    }
+
+    public final ClassMember getClass(String className) {
+        return version.getClass(className);
+    }
+
+    public final ParentMember getParentMember(String parentMemberName) {
+        return version.getParentMember(parentMemberName);
     }
 
-    public final synchronized ClassMember getClass(String className) {
-        return nameToParents.getClass(className);
+    public final List<Method> getMethods(String method) {
+        return version.getMethods(method);
     }
 
-    public final synchronized ParentMember getParentMember(String parentMemberName) {
-        return nameToParents.getMember(parentMemberName);
+    /**
+     * Returns methods of modules and classes with short names
+     * starting with the partial method name, as a new set.
+     */
+    public final Set<Method> getMethodsStartingWith(String partialMethod) {
+        return version.getMethodsStartingWith(partialMethod);
     }
 
-    public final synchronized List<Method> getMethods(String method) {
-        return new ArrayList<Method>(nameToMethods.getMethods(method));
+    public final Set<Member> getMembersWithMethod(String method) {
+        return version.getMembersWithMethod(method);
     }
 
-    public final synchronized Set<Member> getMembersWithMethod(String method) {
-        return new HashSet<Member>(methodToParents.getParentSet(method));
+    public final Set<Method> getMethodsOfMember(String memberName) {
+        return version.getMethodsOfMember(memberName);
     }
 
-    public final synchronized Set<Method> getMethodsOfMember(String memberName) {
-        return new HashSet<Method>(parentToMethods.getMethodSet(memberName));
+    public final Set<Method> getAllMethods() {
+        return version.getAllMethods();
     }
 
-    public final synchronized Set<Method> getAllMethods() {
-        return parentToMethods.getAllMethods();
+    public final List<Member> getAllImmediateMembers() {
+        return version.getAllImmediateMembers();
     }
 
-    public final synchronized List<Member> getAllImmediateMembers() {
-        return new ArrayList<Member>(nameToParents.getAllMembers());
+    public final List<Member> getMembersWithMethodAsList(String method) {
+        return version.getMembersWithMethodAsList(method);
     }
 
-    public final synchronized List<Member> getMembersWithMethodAsList(String method) {
-        return new ArrayList<Member>(methodToParents.getParentList(method));
+    public final List<Method> getMethodsOfMemberAsList(String memberName) {
+        return version.getMethodsOfMemberAsList(memberName);
     }
 
-    public final synchronized List<Method> getMethodsOfMemberAsList(String memberName) {
-        return new ArrayList<Method>(parentToMethods.getMethodList(memberName));
+    /**
+     * Returns the module or class followed by its ancestors,
+     * in the order they are searched for a method.
+     */
+    public final List<ParentMember> getAncestors(String memberName) {
+        return version.getAncestors(memberName);
     }
 
+    /**
+     * Populates method return types and marks the methods of
+     * modules included by Rails base classes as class methods,
+     * replaying the supplied snapshot if it was restored from
+     * file, otherwise recording to and saving the snapshot.
+     */
+    public final synchronized void populateSuperClassMethods(RubyCacheSnapshot snapshot) {
+        if (snapshot.isRestored()) {
+            addApplicationController();
+            publish();
+            snapshot.restore(this);
+            ancestors.invalidateAll();
+            populated = true;
+            changed();
+        } else {
+            this.snapshot = snapshot;
+            try {
+                populateSuperClassMethods();
+            } finally {
+                this.snapshot = null;
+            }
+            snapshot.write();
+        }
+    }
+
+    /**
+     * Superclass and included module methods are not copied to
+     * each class, they are resolved on first lookup of the class,
+     * see {@link Ancestors}.
+     */
     public final synchronized void populateSuperClassMethods() {
-        Collection<ParentMember> allParents = nameToParents.getAllParents();
+        addApplicationController();
+        publish();
+        markImplicitClassMethods();
+        ancestors.invalidateAll();
+        publish();
 
-        for (ParentMember member : allParents) {
-            member.accept(new MemberVisitorAdapter() {
-                public void handleClass(ClassMember classMember) {
-//                    populateSuperClassMethods(classMember, classMember);
-                }
-            });
+        Set<Method> methods = parentToMethods.getAllMethods();
+
+        for (Method method : methods) {
+            method.populateReturnTypes();
+            if (snapshot != null) {
+                snapshot.recordReturnTypes(method);
+            }
         }
+        populated = true;
+        changed();
+    }
 
+    private ClassMember addApplicationController() {
+        ClassMember appController = null;
         if (nameToParents.getMember("ActionController::Base") != null) {
-            ClassMember appController = new ClassMember("ApplicationController");
+            appController = new ClassMember(APPLICATION_CONTROLLER);
             appController.setSuperClassName("ActionController::Base");
             appController.setEndOffset(0);
             appController.setDocumentationComment(
@@ -135,30 +351,22 @@ public final class RubyCache {
                     " Filters added to this controller will be run for all controllers in the application." +
                     " Likewise, all the methods added will be available for all controllers.</p>");
 
-            addClass(appController, "ApplicationController");
-            populateSuperClassMethods(appController, appController);
-        }
-
-        Set<Method> methods = getAllMethods();
-
-        for (Method method : methods) {
-            method.populateReturnTypes();
+            Member[] members = new Member[]{appController};
+            add(new RubyMembers(members, new ArrayList<Problem>(), 0), APPLICATION_CONTROLLER);
         }
+        return appController;
     }
 
     private void add(RubyMembers members, String path) {
-        parentToMethods.resetAllMethodsList();
-        pathToMembers.put(path, members);
+        pathToMembers.add(path, members);
         members.visitMembers(new MemberVisitorAdapter() {
             public void handleModule(Module module) {
-                parentToImmediateMethods.add(module);
-                parentToMethods.add(module);
+                addParent(module);
                 nameToParents.add(module);
             }
 
             public void handleClass(ClassMember classMember) {
-                parentToImmediateMethods.add(classMember);
-                parentToMethods.add(classMember);
+                addParent(classMember);
                 nameToParents.add(classMember);
             }
 
@@ -169,133 +377,51 @@ public final class RubyCache {
         });
     }
 
-    private final static String[] ACTION_CONTROLLER_BASE_INCLUDES = new String[]{
-            "ActionController::Filters",
-            "ActionController::Layout",
-            "ActionController::Flash",
-            "ActionController::Benchmarking",
-            "ActionController::Rescue",
-            "ActionController::Dependencies",
-            "ActionController::Pagination",
-            "ActionController::Scaffolding",
-            "ActionController::Helpers",
-            "ActionController::Cookies",
-            "ActionController::Caching",
-            "ActionController::Components",
-            "ActionController::Verification",
-            "ActionController::Streaming",
-            "ActionController::SessionManagement",
-            "ActionController::Macros::AutoComplete",
-            "ActionController::Macros::InPlaceEditing"
-    };
-
-    private final static String[] ACTIVE_RECORD_BASE_INCLUDES = new String[]{
-            "ActiveRecord::Validations",
-            "ActiveRecord::Locking",
-            "ActiveRecord::Callbacks",
-            "ActiveRecord::Observing",
-            "ActiveRecord::Timestamp",
-            "ActiveRecord::Associations",
-            "ActiveRecord::Aggregations",
-            "ActiveRecord::Transactions",
-            "ActiveRecord::Reflection",
-            "ActiveRecord::Acts::Tree",
-            "ActiveRecord::Acts::List",
-            "ActiveRecord::Acts::NestedSet"
-    };
-
-    private void populateSuperClassMethods(ClassMember member, ClassMember memberOrSuperclass) {
-        if (memberOrSuperclass.hasSuperClassName()) {
-            String superClassName = memberOrSuperclass.getSuperClassName();
-            ClassMember superClass = nameToParents.getClass(superClassName);
-            if (superClass != null) {
-                addSuperClassMethods(member, superClass.getMethods());
-                populateSuperClassMethods(member, superClass);
-            }
+    private void addParent(ParentMember parent) {
+        parentToImmediateMethods.add(parent);
+        parentToMethods.add(parent);
+        parentChanged(parent);
+    }
 
-            addIncludes(member, "ActiveRecord::Base", ACTIVE_RECORD_BASE_INCLUDES);
-            addIncludes(member, "ActionController::Base", ACTION_CONTROLLER_BASE_INCLUDES);
+    /**
+     * Re-adds methods of a remaining definition of a module or
+     * class, as entries equal to those of a removed definition
+     * are removed along with it.
+     */
+    private void restoreDefinition(ParentMember definition) {
+        addParent(definition);
+        for (Method method : definition.getMethods()) {
+            methodToParents.add(method);
+            nameToMethods.add(method);
         }
     }
 
-    private void addIncludes(ClassMember member, String fullName, String[] includeModules) {
-        if (member.getFullName().equals(fullName)) {
-            for (String include : includeModules) {
-                ClassMember classMethodClass = nameToParents.getClass(include + "::ClassMethods");
-                if (classMethodClass != null && classMethodClass.getMethods().size() > 0) {
-                    includeClassMethods(member, classMethodClass);
-                } else {
-                    classMethodClass = nameToParents.getClass(include);
-                    if (classMethodClass != null) {
-                        includeClassMethods(member, classMethodClass);
+    /**
+     * Marks the methods of modules included at runtime by Rails
+     * base classes as class methods, see {@link Ancestors}.
+     * Modules with methods newly marked are recorded as changed.
+     */
+    private void markImplicitClassMethods() {
+        for (ParentMember member : nameToParents.getAllParents()) {
+            for (ParentMember module : Ancestors.getImplicitIncludes(member, version)) {
+                for (Method method : module.getMethods()) {
+                    if (!method.isClassMethod()) {
+                        parentChanged(module);
+                    }
+                    method.setClassMethod(true);
+                    if (snapshot != null) {
+                        snapshot.recordClassMethod(method);
                     }
                 }
             }
         }
     }
 
-    private void includeClassMethods(ClassMember member, ClassMember classMethodClass) {
-        Set<Method> methods = classMethodClass.getMethods();
-        Set<Method> classMethods = new HashSet<Method>();
-
-        for (Method classMethod : methods) {
-            classMethod.setClassMethod(true);
-            classMethods.add(classMethod);
-        }
-        addSuperClassMethods(member, classMethods);
-    }
-
-    private void addSuperClassMethods(ClassMember member, Set<Method> superClassMethods) {
-        for (Method method : superClassMethods) {
-            methodToParents.add(method, member);
-        }
-        superClassMethods = filterOutDuplicates(member, superClassMethods);
-        parentToMethods.add(member, superClassMethods);
-    }
-
-    private Set<Method> filterOutDuplicates(ParentMember member, Set<Method> parentMethods) {
-        Set<String> methodNames = getMethodNames(member);
-        Iterator<Method> parentMethodIterator = parentMethods.iterator();
-
-        while (parentMethodIterator.hasNext()) {
-            Method parentMethod = parentMethodIterator.next();
-            if (methodNames.contains(parentMethod.getName())) {
-                parentMethodIterator.remove();
-            }
-        }
-        return parentMethods;
-    }
-
-    private Set<String> getMethodNames(ParentMember member) {
-        Set<Method> methods = parentToMethods.getMethodSet(member.getName());
-        Set<String> methodNames = new HashSet<String>();
-        for (Method method : methods) {
-            methodNames.add(method.getName());
-        }
-        return methodNames;
-    }
-
-    public List<ParentMember> getParentsStartingWith(String partialClass, boolean ignoreCase) {
-        List<ParentMember> members = new ArrayList<ParentMember>();
-        List<String> names = nameToParents.getAllParentNames();
-
-        String lowerCasePartial = null;
-        if (ignoreCase && partialClass != null) {
-            lowerCasePartial = partialClass.toLowerCase();
-        }
-
-        for (String name : names) {
-            if (name.startsWith(partialClass)) {
-                ParentMember member = nameToParents.getMember(name);
-                members.add(member);
-            } else if (ignoreCase && lowerCasePartial != null) {
-                if (name.toLowerCase().startsWith(lowerCasePartial)) {
-                    ParentMember member = nameToParents.getMember(name);
-                    members.add(member);
-                }
-            }
-        }
-
-        return members;
+    /**
+     * Returns modules and classes with full names starting
+     * with the partial class name, as a new list.
+     */
+    public final List<ParentMember> getParentsStartingWith(String partialClass, boolean ignoreCase) {
+        return version.getParentsStartingWith(partialClass, ignoreCase);
     }
 }
@@ -0,0 +1,232 @@
+/*
+ * RubyCacheSnapshot.java - Saved results of populating the RubyCache
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.cache;
+
+import org.jedit.ruby.ast.*;
+import org.jedit.ruby.RubyPlugin;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Records the work done by {@link RubyCache#populateSuperClassMethods}
+ * on RDoc members, i.e. methods made class methods by an include and
+ * guessed method return types, so that it can be saved and replayed
+ * on the next start instead of being repeated.
+ * <p/>
+ * Methods are identified by their position in the RDoc load order,
+ * so a snapshot is only valid for the same RDoc and the same
+ * include/exclude settings, as given by the snapshot key.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class RubyCacheSnapshot {
+
+    private static final int MAGIC = 0x52436153;
+    private static final int VERSION = 2;
+    private static final String NO_TYPE = "";
+
+    private final File file;
+    private final String key;
+    private final List<Method> methods;
+    private final Map<Method, Integer> methodToIndex;
+
+    private final List<Integer> classMethods;
+    private final Map<Integer, List<String>> returnTypes;
+    private boolean restored;
+    private boolean incomplete;
+
+    /**
+     * @param file snapshot file
+     * @param key identifies the RDoc and settings the snapshot is valid for
+     * @param parents RDoc classes in load order
+     */
+    public RubyCacheSnapshot(File file, String key, List<ClassMember> parents) {
+        this.file = file;
+        this.key = key;
+        methods = new ArrayList<Method>();
+        for (ParentMember parent : parents) {
+            if (parent.hasChildMembers()) {
+                for (Member member : parent.getChildMembersAsList()) {
+                    if (member instanceof Method) {
+                        methods.add((Method)member);
+                    }
+                }
+            }
+        }
+        methodToIndex = new IdentityHashMap<Method, Integer>(methods.size());
+        classMethods = new ArrayList<Integer>();
+        returnTypes = new LinkedHashMap<Integer, List<String>>();
+    }
+
+    /**
+     * Reads the snapshot file if it exists and matches this snapshot's key.
+     *
+     * @return true if snapshot was restored from file
+     */
+    public final boolean read() {
+        if (file.exists()) {
+            try {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    restored = read(input);
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                RubyPlugin.error(e, getClass());
+                restored = false;
+            }
+            if (!restored) {
+                classMethods.clear();
+                returnTypes.clear();
+            }
+        }
+        return restored;
+    }
+
+    final boolean isRestored() {
+        return restored;
+    }
+
+    private boolean read(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION
+                || !input.readUTF().equals(key) || input.readInt() != methods.size()) {
+            return false;
+        }
+
+        classMethods.addAll(readIndexes(input));
+
+        int returnTypeCount = input.readInt();
+        for (int i = 0; i < returnTypeCount; i++) {
+            int index = input.readInt();
+            int typeCount = input.readInt();
+            List<String> types = new ArrayList<String>(typeCount);
+            for (int j = 0; j < typeCount; j++) {
+                types.add(input.readUTF());
+            }
+            returnTypes.put(index, types);
+        }
+        return true;
+    }
+
+    private List<Integer> readIndexes(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        List<Integer> indexes = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            indexes.add(input.readInt());
+        }
+        return indexes;
+    }
+
+    /**
+     * Writes snapshot to file, unless it was restored from file
+     * or refers to methods that didn't come from the RDoc.
+     */
+    final void write() {
+        if (!restored && !incomplete) {
+            try {
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                try {
+                    write(output);
+                } finally {
+                    output.close();
+                }
+            } catch (IOException e) {
+                RubyPlugin.error(e, getClass());
+                file.delete();
+            }
+        }
+    }
+
+    private void write(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(key);
+        output.writeInt(methods.size());
+
+        writeIndexes(classMethods, output);
+
+        output.writeInt(returnTypes.size());
+        for (Integer index : returnTypes.keySet()) {
+            List<String> types = returnTypes.get(index);
+            output.writeInt(index);
+            output.writeInt(types.size());
+            for (String type : types) {
+                output.writeUTF(type);
+            }
+        }
+    }
+
+    private static void writeIndexes(List<Integer> indexes, DataOutputStream output) throws IOException {
+        output.writeInt(indexes.size());
+        for (Integer index : indexes) {
+            output.writeInt(index);
+        }
+    }
+
+    final void recordClassMethod(Method method) {
+        Integer index = indexOf(method);
+        if (index == null) {
+            incomplete = true;
+        } else {
+            classMethods.add(index);
+        }
+    }
+
+    final void recordReturnTypes(Method method) {
+        Set<Member> types = method.getReturnTypes();
+        Integer index = indexOf(method);
+
+        if (types != null && index != null) {
+            List<String> typeNames = new ArrayList<String>(types.size());
+            for (Member type : types) {
+                typeNames.add(type == null ? NO_TYPE : type.getFullName());
+            }
+            returnTypes.put(index, typeNames);
+        }
+    }
+
+    private Integer indexOf(Method method) {
+        if (methodToIndex.isEmpty()) {
+            for (int i = 0; i < methods.size(); i++) {
+                methodToIndex.put(methods.get(i), i);
+            }
+        }
+        return methodToIndex.get(method);
+    }
+
+    /**
+     * Replays restored snapshot on to the supplied cache.
+     */
+    final void restore(RubyCache cache) {
+        for (Integer index : classMethods) {
+            methods.get(index).setClassMethod(true);
+        }
+
+        for (Integer index : returnTypes.keySet()) {
+            Set<Member> types = new HashSet<Member>();
+            for (String typeName : returnTypes.get(index)) {
+                types.add(typeName.equals(NO_TYPE) ? null : cache.getParentMember(typeName));
+            }
+            methods.get(index).setReturnTypes(types);
+        }
+    }
+}
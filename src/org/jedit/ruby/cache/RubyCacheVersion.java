@@ -0,0 +1,246 @@
+/*
+ * RubyCacheVersion.java - Immutable published version of the RubyCache
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.cache;
+
+import org.jedit.ruby.ast.ClassMember;
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.Method;
+import org.jedit.ruby.ast.ParentMember;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable copy of the {@link RubyCache} indexes, built by
+ * writers and published for lock free reading. Readers are
+ * given unmodifiable views rather than defensive copies.
+ * <p/>
+ * Sorted lists are derived on first request and memoized,
+ * which is safe as the underlying maps never change. Inherited
+ * methods are resolved on first request by {@link Ancestors}.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class RubyCacheVersion {
+
+    static final RubyCacheVersion EMPTY = new RubyCacheVersion(
+            new HashMap<String, ParentMember>(), new HashMap<String, ParentMember>(),
+            new HashMap<String, Set<Method>>(), new HashMap<String, Set<Member>>(),
+            new HashMap<String, Set<Method>>(), new HashMap<String, Set<Method>>(),
+            new HashMap<String, Set<Method>>(), NameIndex.EMPTY, NameIndex.EMPTY, new Ancestors(), 0);
+
+    private final Map<String, ParentMember> fullNameToParent;
+    private final Map<String, ParentMember> nameToParent;
+    private final Map<String, Set<Method>> nameToMethods;
+    private final Map<String, Set<Member>> methodToParents;
+    private final Map<String, Set<Method>> fullNameToMethods;
+    private final Map<String, Set<Method>> parentNameToMethods;
+    private final Map<String, Set<Method>> fullNameToImmediateMethods;
+    private final NameIndex parentNames;
+    private final NameIndex methodNames;
+    private final Ancestors ancestors;
+    private final int ancestorsGeneration;
+
+    private final Map<String, List<Method>> nameToMethodList = new ConcurrentHashMap<String, List<Method>>();
+    private final Map<String, List<Member>> methodToParentList = new ConcurrentHashMap<String, List<Member>>();
+    private final Map<String, List<Method>> parentToMethodList = new ConcurrentHashMap<String, List<Method>>();
+    private volatile Set<Method> allMethods;
+    private volatile List<Member> allMembers;
+
+    /**
+     * Maps supplied must not change, see {@link FrozenMap}.
+     */
+    RubyCacheVersion(Map<String, ParentMember> fullNameToParent,
+                     Map<String, ParentMember> nameToParent,
+                     Map<String, Set<Method>> nameToMethods,
+                     Map<String, Set<Member>> methodToParents,
+                     Map<String, Set<Method>> fullNameToMethods,
+                     Map<String, Set<Method>> parentNameToMethods,
+                     Map<String, Set<Method>> fullNameToImmediateMethods,
+                     NameIndex parentNames,
+                     NameIndex methodNames,
+                     Ancestors ancestors,
+                     int ancestorsGeneration) {
+        this.fullNameToParent = fullNameToParent;
+        this.nameToParent = nameToParent;
+        this.nameToMethods = nameToMethods;
+        this.methodToParents = methodToParents;
+        this.fullNameToMethods = fullNameToMethods;
+        this.parentNameToMethods = parentNameToMethods;
+        this.fullNameToImmediateMethods = fullNameToImmediateMethods;
+        this.parentNames = parentNames;
+        this.methodNames = methodNames;
+        this.ancestors = ancestors;
+        this.ancestorsGeneration = ancestorsGeneration;
+    }
+
+    final ParentMember getParentMember(String name) {
+        ParentMember member = fullNameToParent.get(name);
+        return member != null ? member : nameToParent.get(name);
+    }
+
+    final ClassMember getClass(String name) {
+        ParentMember member = getParentMember(name);
+        return member instanceof ClassMember ? (ClassMember)member : null;
+    }
+
+    /**
+     * @return modules and classes in full name order with
+     * full names starting with prefix, ignoring case if requested
+     */
+    final List<ParentMember> getParentsStartingWith(String prefix, boolean ignoreCase) {
+        List<String> names = parentNames.getNamesStartingWith(prefix, ignoreCase);
+        List<ParentMember> members = new ArrayList<ParentMember>(names.size());
+        for (String name : names) {
+            members.add(fullNameToParent.get(name));
+        }
+        return members;
+    }
+
+    final List<Method> getMethods(String methodName) {
+        List<Method> methods = nameToMethodList.get(methodName);
+        if (methods == null) {
+            methods = sort(nameToMethods.get(methodName));
+            nameToMethodList.put(methodName, methods);
+        }
+        return methods;
+    }
+
+    /**
+     * @return methods of modules and classes with short names
+     * starting with prefix, as a new set
+     */
+    final Set<Method> getMethodsStartingWith(String prefix) {
+        Set<Method> methods = new HashSet<Method>();
+        for (String name : methodNames.getNamesStartingWith(prefix, false)) {
+            for (Method method : nameToMethods.get(name)) {
+                if (method.hasParentMember()) {
+                    methods.add(method);
+                }
+            }
+        }
+        return methods;
+    }
+
+    final Set<Member> getMembersWithMethod(String methodName) {
+        return nonNull(methodToParents.get(methodName));
+    }
+
+    final List<Member> getMembersWithMethodAsList(String methodName) {
+        List<Member> members = methodToParentList.get(methodName);
+        if (members == null) {
+            members = sort(methodToParents.get(methodName));
+            methodToParentList.put(methodName, members);
+        }
+        return members;
+    }
+
+    /**
+     * @return methods of the module or class, including
+     * the methods it inherits from its ancestors
+     */
+    final Set<Method> getMethodsOfMember(String memberName) {
+        Set<Method> methods = fullNameToMethods.get(memberName);
+        if (methods == null) {
+            methods = parentNameToMethods.get(memberName);
+        }
+        ParentMember member = getParentMember(memberName);
+
+        if (member == null) {
+            return nonNull(methods);
+        } else {
+            Set<Method> allMethods = ancestors.getMethods(member, this, ancestorsGeneration);
+            if (methods == null || allMethods.containsAll(methods)) {
+                return allMethods;
+            } else {
+                Set<Method> union = new HashSet<Method>(methods);
+                union.addAll(allMethods);
+                return Collections.unmodifiableSet(union);
+            }
+        }
+    }
+
+    final List<Method> getMethodsOfMemberAsList(String memberName) {
+        List<Method> methods = parentToMethodList.get(memberName);
+        if (methods == null) {
+            methods = sort(getMethodsOfMember(memberName));
+            parentToMethodList.put(memberName, methods);
+        }
+        return methods;
+    }
+
+    /**
+     * @return methods defined in the module or class itself
+     */
+    final Set<Method> getImmediateMethods(String fullName) {
+        return nonNull(fullNameToImmediateMethods.get(fullName));
+    }
+
+    final List<ParentMember> getAncestors(String memberName) {
+        ParentMember member = getParentMember(memberName);
+        if (member == null) {
+            return Collections.emptyList();
+        } else {
+            return Collections.unmodifiableList(ancestors.getAncestors(member, this, ancestorsGeneration));
+        }
+    }
+
+    final Set<Method> getAllMethods() {
+        if (allMethods == null) {
+            Set<Method> methods = new HashSet<Method>();
+            for (Set<Method> methodSet : fullNameToMethods.values()) {
+                methods.addAll(methodSet);
+            }
+            allMethods = Collections.unmodifiableSet(methods);
+        }
+        return allMethods;
+    }
+
+    /**
+     * @return each module and class followed by its immediate methods
+     */
+    final List<Member> getAllImmediateMembers() {
+        if (allMembers == null) {
+            List<Member> members = new ArrayList<Member>();
+            for (String parentName : parentNames.getNames()) {
+                members.add(fullNameToParent.get(parentName));
+                members.addAll(sort(fullNameToImmediateMethods.get(parentName)));
+            }
+            allMembers = Collections.unmodifiableList(members);
+        }
+        return allMembers;
+    }
+
+    private static <T> Set<T> nonNull(Set<T> set) {
+        return set != null ? set : Collections.<T>emptySet();
+    }
+
+    private static <T extends Comparable<? super T>> List<T> sort(Set<T> set) {
+        if (set == null) {
+            return Collections.emptyList();
+        } else {
+            List<T> list = new ArrayList<T>(set);
+            if (list.size() > 1) {
+                Collections.sort(list);
+            }
+            return Collections.unmodifiableList(list);
+        }
+    }
+}
@@ -33,19 +33,11 @@ public final class CodeCompletor {
 
     private static final ArrayList EMPTY_LIST = new ArrayList();
     private static final MethodFinderVisitor METHOD_FINDER = new MethodFinderVisitor();
-    private static final Set<Method> kernelMethods = getMethodsOfParentMember("Kernel", false, true);
-    private static final Set<Method> moduleMethods = getMethodsOfParentMember("Module", false, true);
-    private static final Set<String> kernelMethodsNames = new HashSet<String>();
-    private static final Set<String> moduleMethodsNames = new HashSet<String>();
-
-    static {
-        for (Method method : kernelMethods) {
-            kernelMethodsNames.add(method.getShortName());
-        }
-        for (Method method : moduleMethods) {
-            moduleMethodsNames.add(method.getShortName());
-        }
-    }
+    private static Set<Method> kernelMethods = new HashSet<Method>();
+    private static Set<Method> moduleMethods = new HashSet<Method>();
+    private static Set<String> kernelMethodsNames = new HashSet<String>();
+    private static Set<String> moduleMethodsNames = new HashSet<String>();
+    private static RubyCache commonMethodsCache;
 
     private final List<ParentMember> classesAndModules;
     private final List<Method> methods;
@@ -57,6 +49,7 @@ public final class CodeCompletor {
 
     public CodeCompletor(EditorView editorView) {
         RubyPlugin.log("completing", getClass());
+        initCommonMethods();
         foundMethodsFromPosition = false;
         view = editorView;
         analyzer = new CodeAnalyzer(editorView);
@@ -70,6 +63,42 @@ public final class CodeCompletor {
 //        }
     }
 
+    /**
+     * Returns true while RDoc is still loading in the background,
+     * completions will not include documented Ruby methods until
+     * loading has finished.
+     */
+    public static boolean isDocumentationLoading() {
+        return !RubyCache.instance().isPopulated();
+    }
+
+    /**
+     * Kernel and Module methods are only memoized once
+     * the RDoc has finished loading into the current cache.
+     */
+    private static synchronized void initCommonMethods() {
+        RubyCache cache = RubyCache.instance();
+
+        if (cache != commonMethodsCache) {
+            kernelMethods = getMethodsOfParentMember("Kernel", false, true);
+            moduleMethods = getMethodsOfParentMember("Module", false, true);
+            kernelMethodsNames = getShortNames(kernelMethods);
+            moduleMethodsNames = getShortNames(moduleMethods);
+
+            if (cache.isPopulated()) {
+                commonMethodsCache = cache;
+            }
+        }
+    }
+
+    private static Set<String> getShortNames(Set<Method> methods) {
+        Set<String> names = new HashSet<String>();
+        for (Method method : methods) {
+            names.add(method.getShortName());
+        }
+        return names;
+    }
+
     private List<KeywordMember> findKeywords(boolean foundMethodsFromPosition) {
         List<KeywordMember> keywords;
 
@@ -137,7 +166,7 @@ public final class CodeCompletor {
 
         if (members.size() == 0 && analyzer.getClassMethodCalledFrom() == null) {
             members.addAll(getMatchesFromFile());
-            members.addAll(convertToList(filterMethods(RubyCache.instance().getAllMethods())));
+            members.addAll(convertToList(findAllMethods()));
             members.removeAll(getMatchingKeywords());
         }
 
@@ -209,7 +238,7 @@ public final class CodeCompletor {
                     if (methodCalledOnThis.indexOf('.') == -1 || CodeAnalyzer.isFloat(methodCalledOnThis)) {
                         methods = findMethodsFromCallee();
                     } else {
-                        methods = filterMethods(RubyCache.instance().getAllMethods());
+                        methods = findAllMethods();
                     }
                 } else {
                     methods = new HashSet<Method>();
@@ -288,6 +317,19 @@ public final class CodeCompletor {
         return filterMethods(methods);
     }
 
+    /**
+     * Returns all methods starting with the partial method,
+     * found using the method name index rather than filtering.
+     */
+    private Set<Method> findAllMethods() {
+        String partialMethod = getPartialMethod();
+        if (partialMethod != null && partialMethod.length() > 0) {
+            return RubyCache.instance().getMethodsStartingWith(partialMethod);
+        } else {
+            return new HashSet<Method>(RubyCache.instance().getAllMethods());
+        }
+    }
+
     private Set<Method> filterMethods(Set<Method> methods) {
         String partialMethod = getPartialMethod();
         if (partialMethod != null) {
@@ -305,7 +347,7 @@ public final class CodeCompletor {
 
     private static Set<Method> getMethodsOfParentMember(String parentMember, boolean removeInstanceMethods, boolean removeCommonClassMethods) {
         RubyPlugin.log("parent: " + parentMember, CodeCompletor.class);
-        Set<Method> methods = RubyCache.instance().getMethodsOfMember(parentMember);
+        Set<Method> methods = new HashSet<Method>(RubyCache.instance().getMethodsOfMember(parentMember));
         RubyPlugin.log("methods: " + methods.size(), CodeCompletor.class);
 
         for (Iterator<Method> iterator = methods.iterator(); iterator.hasNext();) {
@@ -386,12 +428,6 @@ public final class CodeCompletor {
 
         public final void handleClass(ClassMember classMember) {
             methods = completor.findMethods(classMember.getFullName(), true);
-            String superClass = classMember.getSuperClassName();
-
-            if (superClass != null) {
-                methods.addAll(completor.findMethods(superClass, true));
-            }
-
             methods.addAll(completor.getModuleMethods());
         }
 
@@ -0,0 +1,96 @@
+/*
+ * EditRegion.java - Region of text edited since last parse
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.parser;
+
+/**
+ * Region of a file's text edited since the file was last
+ * parsed, accumulated from buffer change events. Text before
+ * the region is unchanged, text after the region is unchanged
+ * but shifted by {@link #getDelta()}.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class EditRegion {
+
+    private int start;
+    private int end;
+    private int delta;
+
+    EditRegion(int offset) {
+        start = offset;
+        end = offset;
+        delta = 0;
+    }
+
+    final void inserted(int offset, int length) {
+        if (offset <= end) {
+            end += length;
+        }
+        start = Math.min(start, offset);
+        end = Math.max(end, offset + length);
+        delta += length;
+    }
+
+    final void removed(int offset, int length) {
+        if (end < offset) {
+            end = offset;
+        } else {
+            end = Math.max(offset, end - length);
+        }
+        start = Math.min(start, offset);
+        delta -= length;
+    }
+
+    /**
+     * Extends region to the enclosing region that was reparsed.
+     */
+    final void extendTo(int regionStart, int regionEnd) {
+        start = regionStart;
+        end = regionEnd;
+    }
+
+    /**
+     * @return start offset of region, the same in old and new text
+     */
+    final int getStart() {
+        return start;
+    }
+
+    /**
+     * @return end offset of region in the new text
+     */
+    final int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return end offset of region in the text last parsed
+     */
+    final int getOldEnd() {
+        return end - delta;
+    }
+
+    /**
+     * @return change in text length since last parse
+     */
+    final int getDelta() {
+        return delta;
+    }
+}
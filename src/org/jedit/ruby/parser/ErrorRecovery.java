@@ -0,0 +1,191 @@
+/*
+ * ErrorRecovery.java - Finds the region of a syntax error
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.parser;
+
+import java.util.regex.Pattern;
+
+/**
+ * Blanks out the region of text holding a syntax error, so the
+ * rest of the text can be parsed. Characters other than line ends
+ * are replaced by spaces, so offsets and lines are unchanged.
+ * <p/>
+ * Regions are found from indentation, as the parser can't say
+ * where a block it failed to parse began. A block opened by
+ * <code>def</code>, <code>class</code>, <code>if</code>, a
+ * <code>do</code> etc. is taken to be unclosed if the next line
+ * indented no further isn't an <code>end</code> at the same
+ * indent. The region blanked is, in order of preference:
+ * <ul>
+ * <li>the nearest unclosed block at or before the error line, up
+ * to the line before the next line indented no further, e.g. a
+ * method missing its end</li>
+ * <li>the innermost block holding the error line</li>
+ * <li>if the error line is an <code>end</code> closing no block,
+ * the lines back to the nearest line indented no further</li>
+ * <li>the first unclosed block after the error line, as a valid
+ * block that is only mis-indented also looks unclosed</li>
+ * <li>the error line</li>
+ * </ul>
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class ErrorRecovery {
+
+    private static final Pattern OPENER = Pattern.compile("(def|class|module|if|unless|while|until|case|begin|for)\\b.*");
+    private static final Pattern DO_BLOCK = Pattern.compile(".*\\bdo(\\s*\\|[^|]*\\|)?\\s*(#.*)?");
+    private static final Pattern ONE_LINER = Pattern.compile(".*\\bend\\b[\\s).,;]*(#.*)?");
+    private static final Pattern END = Pattern.compile("end\\b.*");
+    private static final Pattern CONTINUATION = Pattern.compile("(else|elsif|when|in|rescue|ensure|then)\\b.*");
+
+    private final LineCounter lineCounter;
+    private final String[] lines;
+    private final int[] indents;
+
+    private ErrorRecovery(LineCounter lineCounter) {
+        this.lineCounter = lineCounter;
+        int lineCount = lineCounter.getLineCount();
+        lines = new String[lineCount];
+        indents = new int[lineCount];
+
+        for (int i = 0; i < lineCount; i++) {
+            String line = lineCounter.getLine(i);
+            int indent = 0;
+            while (indent < line.length() && Character.isWhitespace(line.charAt(indent))) {
+                indent++;
+            }
+            lines[i] = line.substring(indent);
+            indents[i] = indent;
+        }
+    }
+
+    /**
+     * @param errorLine line of the syntax error, starting at 0
+     * @return text with the broken region blanked out,
+     * or null if there is no text to blank
+     */
+    static String blankBrokenRegion(String text, int errorLine) {
+        LineCounter lineCounter = new LineCounter(text);
+        if (lineCounter.getLineCount() == 0) {
+            return null;
+        }
+        errorLine = Math.max(0, Math.min(errorLine, lineCounter.getLineCount() - 1));
+        return new ErrorRecovery(lineCounter).blankRegion(text, errorLine);
+    }
+
+    private String blankRegion(String text, int errorLine) {
+        int unclosedBefore = -1;
+        int unclosedBeforeEnd = -1;
+        int unclosedAfter = -1;
+        int unclosedAfterEnd = -1;
+        int enclosingStart = -1;
+        int enclosingEnd = -1;
+        boolean errorLineClosesBlock = false;
+
+        for (int i = 0; i < lines.length; i++) {
+            if (isOpener(lines[i])) {
+                int close = findClose(i);
+                if (close < 0) {
+                    if (i <= errorLine) {
+                        unclosedBefore = i;
+                        unclosedBeforeEnd = -close - 1;
+                    } else if (unclosedAfter == -1) {
+                        unclosedAfter = i;
+                        unclosedAfterEnd = -close - 1;
+                    }
+                } else {
+                    if (i <= errorLine && errorLine <= close && i > enclosingStart) {
+                        enclosingStart = i;
+                        enclosingEnd = close;
+                    }
+                    errorLineClosesBlock |= close == errorLine;
+                }
+            }
+        }
+
+        if (unclosedBefore != -1) {
+            return blank(text, unclosedBefore, unclosedBeforeEnd);
+        } else if (enclosingStart != -1) {
+            return blank(text, enclosingStart, enclosingEnd);
+        } else if (!errorLineClosesBlock && END.matcher(lines[errorLine]).matches()) {
+            return blank(text, findStrayEndBlockStart(errorLine), errorLine);
+        } else if (unclosedAfter != -1) {
+            return blank(text, unclosedAfter, unclosedAfterEnd);
+        } else {
+            return blank(text, errorLine, errorLine);
+        }
+    }
+
+    /**
+     * @return first line of the block an <code>end</code> that
+     * closes no block was meant to close, i.e. the nearest line
+     * before it indented no further, whose opener didn't parse
+     */
+    private int findStrayEndBlockStart(int endLine) {
+        for (int i = endLine - 1; i >= 0; i--) {
+            boolean blankLine = lines[i].length() == 0 || lines[i].charAt(0) == '#';
+            if (!blankLine && indents[i] <= indents[endLine]) {
+                return i;
+            }
+        }
+        return endLine;
+    }
+
+    private static boolean isOpener(String line) {
+        if (line.startsWith("#")) {
+            return false;
+        }
+        boolean opener = OPENER.matcher(line).matches() || DO_BLOCK.matcher(line).matches();
+        return opener && !ONE_LINER.matcher(line).matches();
+    }
+
+    /**
+     * @return line of the block's end, or if unclosed,
+     * -1 minus the last line of the block
+     */
+    private int findClose(int opener) {
+        int indent = indents[opener];
+        int last = opener;
+
+        for (int i = opener + 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.length() == 0 || line.charAt(0) == '#' || indents[i] > indent) {
+                last = i;
+            } else if (indents[i] == indent && END.matcher(line).matches()) {
+                return i;
+            } else if (indents[i] == indent && CONTINUATION.matcher(line).matches()) {
+                last = i;
+            } else {
+                return -last - 1;
+            }
+        }
+        return -last - 1;
+    }
+
+    private String blank(String text, int startLine, int endLine) {
+        char[] chars = text.toCharArray();
+        int end = Math.min(lineCounter.getEndOffset(endLine), chars.length - 1);
+        for (int i = lineCounter.getStartOffset(startLine); i <= end; i++) {
+            if (chars[i] != '\n' && chars[i] != '\r') {
+                chars[i] = ' ';
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -18,19 +18,18 @@ import java.io.StringReader;
 import java.io.Reader;
 
 /**
+ * Parses with the JRuby parser. Holds no state between parses,
+ * so different files may be parsed at the same time on
+ * different threads.
+ *
  * @author robmckinnon at users.sourceforge.net
  */
 public final class JRubyParser {
 
-    private static final JRubyParser instance = new JRubyParser();
+    private static volatile String found = "found";
+    private static volatile String expected = "expected";
+    private static volatile String nothing = "nothing";
 
-    private static String found = "found";
-    private static String expected = "expected";
-    private static String nothing = "nothing";
-
-    private IRubyWarnings warnings;
-
-    /** singleton private constructor */
     private JRubyParser() {
     }
 
@@ -46,19 +45,14 @@ public final class JRubyParser {
         JRubyParser.nothing = nothing;
     }
 
-    static List<Member> getMembers(String text, List<Member> methodMembers, List<RubyParser.WarningListener> listeners, String filePath, LineCounter lineCounter) {
-        return instance.parse(text, listeners, methodMembers, filePath, lineCounter);
-    }
-
-    private List<Member> parse(String text, List<RubyParser.WarningListener> listeners, List<Member> methodMembers, String filePath, LineCounter lineCounter) {
-        this.warnings = new Warnings(listeners);
-
+    static List<Member> getMembers(String text, List<RubyParser.WarningListener> listeners, String filePath, LineCounter lineCounter) {
+        IRubyWarnings warnings = new Warnings(listeners);
         Reader content = new StringReader(text);
-        RubyNodeRubyVisitor visitor = new RubyNodeRubyVisitor(lineCounter, methodMembers, listeners);
+        RubyNodeRubyVisitor visitor = new RubyNodeRubyVisitor(filePath, lineCounter, listeners, text.length());
         List<Member> members;
 
         try {
-            Node node = parse(filePath, content, new ParserConfiguration());
+            Node node = parse(filePath, content, new ParserConfiguration(), warnings);
             if (node != null) {
                 node.accept(visitor);
             }
@@ -68,17 +62,17 @@ public final class JRubyParser {
                 listener.error(e.getPosition(), e.getMessage());
             }
             String message = e.getPosition().getEndLine() + ": " + e.getMessage();
-            RubyPlugin.log(message, getClass());
+            RubyPlugin.log(message, JRubyParser.class);
             members = null;
        } catch (IOException e) {
-            RubyPlugin.log(e.getMessage(), getClass());
+            RubyPlugin.log(e.getMessage(), JRubyParser.class);
             members = null;
         }
 
         return members;
     }
 
-    private Node parse(String name, Reader content, ParserConfiguration config) throws IOException {
+    private static Node parse(String name, Reader content, ParserConfiguration config, IRubyWarnings warnings) throws IOException {
         ParserSupport19 parserSupport = new ParserSupport19() {
             /** Hack to ensure we get original error message */
             @Override
@@ -19,32 +19,36 @@
  */
 package org.jedit.ruby.parser;
 
-import java.util.List;
-import java.util.ArrayList;
-
 /**
+ * Index of the line end offsets in a text, made in one pass
+ * over the text. The offset of a line is found by binary search
+ * over the end offsets.
+ *
  * @author robmckinnon at users.sourceforge.net
  */
 public final class LineCounter {
 
-    private final List<Integer> endOffsets;
     private final String text;
+    private int[] endOffsets;
+    private int lineCount;
 
     public LineCounter(String text) {
         this.text = text;
-        endOffsets = new ArrayList<Integer>();
+        endOffsets = new int[Math.max(16, text.length() / 32)];
 
-        char[] chars = text.toCharArray();
-        int line = 0;
+        int length = text.length();
         int index = 0;
         boolean lastWasNewLine = false;
 
-        while (index < chars.length) {
-            char character = chars[index];
+        while (index < length) {
+            char character = text.charAt(index);
 
             if (isNewLineCharacter(character)) {
-                index = handleNewLine(line, index, chars, character);
-                line++;
+                addEndOffset(index);
+                index++;
+                if (character == '\r' && index < length && text.charAt(index) == '\n') {
+                    index++;
+                }
                 lastWasNewLine = true;
             } else {
                 index++;
@@ -53,29 +57,41 @@ public final class LineCounter {
         }
 
         if (!lastWasNewLine) {
-            endOffsets.add(line, index - 1);
+            addEndOffset(index - 1);
         }
     }
 
+    private void addEndOffset(int offset) {
+        if (lineCount == endOffsets.length) {
+            int[] offsets = new int[lineCount * 2];
+            System.arraycopy(endOffsets, 0, offsets, 0, lineCount);
+            endOffsets = offsets;
+        }
+        endOffsets[lineCount++] = offset;
+    }
+
     public final int getLineCount() {
-        return endOffsets.size();
+        return lineCount;
     }
 
     /**
-     * @return line starting at 0
+     * @return line starting at 0, or the line count
+     * if offset is beyond the last line
      */
     public int getLineAtOffset(int startOffset) {
-        int line = 0;
+        int low = 0;
+        int high = lineCount;
 
-        for (int offset : endOffsets) {
-            if (startOffset > offset) {
-                line++;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (endOffsets[middle] < startOffset) {
+                low = middle + 1;
             } else {
-                return line;
+                high = middle;
             }
         }
 
-        return line;
+        return low;
     }
 
     /**
@@ -106,7 +122,10 @@ public final class LineCounter {
      * @param index starting at 0.
      */
     public final int getEndOffset(int index) {
-        return endOffsets.get(index);
+        if (index >= lineCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + lineCount);
+        }
+        return endOffsets[index];
     }
 
     private String getLine(int beginIndex, int endIndex) {
@@ -126,20 +145,6 @@ public final class LineCounter {
       }
     }
 
-    private int handleNewLine(int line, int index, char[] chars, char character) {
-        endOffsets.add(line, index);
-        index++;
-
-        if (character == '\r' && index < chars.length) {
-            character = chars[index];
-            if (character == '\n') {
-                index++;
-            }
-        }
-
-        return index;
-    }
-
     private static boolean isNewLineCharacter(char character) {
         return character == '\n' || character == '\r';
     }
@@ -0,0 +1,186 @@
+/*
+ * ParseCache.java - Bounded cache of file parse results
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.parser;
+
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.Problem;
+import org.jedit.ruby.ast.RubyMembers;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parse results of files, least recently used first. Each entry
+ * records a 64-bit hash of the text parsed rather than the text
+ * itself, so a file is only reparsed when its hash or length
+ * differs.
+ * <p/>
+ * Entries are weighed by an estimate of the memory their members
+ * retain, and the least recently used are evicted once the total
+ * exceeds the budget. The most recent entry is always kept.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class ParseCache {
+
+    /** Rough retained size of a member with its names and offsets. */
+    private static final int MEMBER_BYTES = 256;
+    private static final int PROBLEM_BYTES = 64;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final LinkedHashMap<File, Entry> fileToEntry;
+    private long budget;
+    private long size;
+
+    ParseCache(long budget) {
+        fileToEntry = new LinkedHashMap<File, Entry>(16, 0.75f, true);
+        this.budget = budget;
+    }
+
+    final void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    final Entry get(File file) {
+        return fileToEntry.get(file);
+    }
+
+    final boolean contains(File file) {
+        return fileToEntry.containsKey(file);
+    }
+
+    final void put(File file, Entry entry) {
+        Entry previous = fileToEntry.put(file, entry);
+        if (previous != null) {
+            size -= previous.weight;
+        }
+        size += entry.weight;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<File, Entry>> entries = fileToEntry.entrySet().iterator();
+        while (size > budget && fileToEntry.size() > 1) {
+            size -= entries.next().getValue().weight;
+            entries.remove();
+        }
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of the characters from start to end
+     */
+    static long hash(CharSequence text, int start, int end) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            char character = text.charAt(i);
+            hash = (hash ^ (character & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (character >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Result of parsing a file's text. Holds a hash of each top
+     * level member's text, so the text either side of an edited
+     * region can be checked unchanged without the old text.
+     */
+    static final class Entry {
+        private final long hash;
+        private final int length;
+        private final int lineCount;
+        private final Member[] members;
+        private final long[] memberHashes;
+        private final List<Problem> problems;
+        private final RubyMembers lastGoodMembers;
+        private final long weight;
+
+        Entry(String text, long hash, int lineCount, Member[] members, List<Problem> problems, RubyMembers lastGoodMembers) {
+            this.hash = hash;
+            this.length = text.length();
+            this.lineCount = lineCount;
+            this.members = members;
+            this.problems = problems;
+            this.lastGoodMembers = lastGoodMembers;
+
+            if (members == null) {
+                memberHashes = null;
+                weight = MEMBER_BYTES + problems.size() * PROBLEM_BYTES;
+            } else {
+                memberHashes = new long[members.length];
+                int count = 0;
+                for (int i = 0; i < members.length; i++) {
+                    memberHashes[i] = hash(text, members[i].getStartOuterOffset(), members[i].getEndOffset());
+                    count += countMembers(members[i]);
+                }
+                weight = (count + 1) * MEMBER_BYTES + problems.size() * PROBLEM_BYTES;
+            }
+        }
+
+        private static int countMembers(Member member) {
+            int count = 1;
+            if (member.hasChildMembers()) {
+                for (Member child : member.getChildMembersAsList()) {
+                    count += countMembers(child);
+                }
+            }
+            return count;
+        }
+
+        final boolean matches(long hash, int length) {
+            return this.hash == hash && this.length == length;
+        }
+
+        /**
+         * @return true if the text of the top level member at index,
+         * shifted by shift, is the text it was parsed from
+         */
+        final boolean memberUnchanged(String text, int index, int shift) {
+            int start = members[index].getStartOuterOffset() + shift;
+            int end = members[index].getEndOffset() + shift;
+            return end <= text.length() && hash(text, start, end) == memberHashes[index];
+        }
+
+        final int getLength() {
+            return length;
+        }
+
+        final int getLineCount() {
+            return lineCount;
+        }
+
+        final Member[] getMembers() {
+            return members;
+        }
+
+        final List<Problem> getProblems() {
+            return problems;
+        }
+
+        final RubyMembers getLastGoodMembers() {
+            return lastGoodMembers;
+        }
+    }
+}
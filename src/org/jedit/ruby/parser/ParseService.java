@@ -0,0 +1,418 @@
+/*
+ * ParseService.java - Parses buffers in the background
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.parser;
+
+import org.gjt.sp.jedit.Buffer;
+import org.gjt.sp.jedit.EditPane;
+import org.gjt.sp.jedit.View;
+import org.gjt.sp.jedit.jEdit;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.jedit.textarea.JEditTextArea;
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.RubyMembers;
+
+import java.awt.EventQueue;
+import java.util.concurrent.*;
+
+/**
+ * Parses buffers on a background thread. Each edit to a buffer
+ * increments its version and schedules a parse once edits pause
+ * for {@link #DEBOUNCE_MILLIS}; a parse already scheduled is
+ * cancelled, so a burst of edits is parsed once.
+ * <p/>
+ * Callers either take the latest completed parse immediately,
+ * which may be of an earlier version, or have the buffer's
+ * current version parsed on their own thread. Once a background
+ * parse completes, text areas showing the buffer match structure
+ * again, as matching skips members the parse hasn't caught up with.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class ParseService {
+
+    private static final int DEBOUNCE_MILLIS = 300;
+    private static final int NO_READ = -1;
+
+    private static final ParseService instance = new ParseService();
+
+    private final ScheduledExecutorService parser;
+    private final ConcurrentMap<String, BufferState> pathToState;
+
+    private ParseService() {
+        parser = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RubyPlugin parser");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        pathToState = new ConcurrentHashMap<String, BufferState>();
+    }
+
+    public static ParseService instance() {
+        return instance;
+    }
+
+    /**
+     * Schedules a parse of a buffer that has been loaded, so its
+     * structure can be matched before it is first edited.
+     */
+    public final void bufferLoaded(Buffer buffer) {
+        BufferState state = getState(buffer.getPath());
+        synchronized (state) {
+            if (state.members == null) {
+                scheduleParse(buffer, buffer.getPath(), state);
+            }
+        }
+    }
+
+    /**
+     * Called on each insert into the buffer, while the
+     * buffer's write lock is held.
+     */
+    public final void textInserted(Buffer buffer, int offset, int length) {
+        textInserted(buffer, buffer.getPath(), offset, length);
+    }
+
+    public final void textInserted(JEditBuffer buffer, String path, int offset, int length) {
+        BufferState state = getState(path);
+        synchronized (state) {
+            state.edits = inserted(state.edits, offset, length);
+            if (state.readVersion != NO_READ) {
+                state.editsSinceRead = inserted(state.editsSinceRead, offset, length);
+            }
+            state.version++;
+            scheduleParse(buffer, path, state);
+        }
+    }
+
+    /**
+     * Called on each removal from the buffer, while the
+     * buffer's write lock is held.
+     */
+    public final void textRemoved(Buffer buffer, int offset, int length) {
+        textRemoved(buffer, buffer.getPath(), offset, length);
+    }
+
+    public final void textRemoved(JEditBuffer buffer, String path, int offset, int length) {
+        BufferState state = getState(path);
+        synchronized (state) {
+            state.edits = removed(state.edits, offset, length);
+            if (state.readVersion != NO_READ) {
+                state.editsSinceRead = removed(state.editsSinceRead, offset, length);
+            }
+            state.version++;
+            scheduleParse(buffer, path, state);
+        }
+    }
+
+    /**
+     * Called when the buffer has changed in a way not given as an
+     * insert or removal, so members of earlier parses can't be
+     * mapped to its text.
+     */
+    public final void bufferChanged(JEditBuffer buffer, String path) {
+        BufferState state = getState(path);
+        synchronized (state) {
+            state.editsKnown = false;
+            state.readVersion = NO_READ;
+            state.version++;
+            scheduleParse(buffer, path, state);
+        }
+    }
+
+    private static EditRegion inserted(EditRegion edits, int offset, int length) {
+        if (edits == null) {
+            edits = new EditRegion(offset);
+        }
+        edits.inserted(offset, length);
+        return edits;
+    }
+
+    private static EditRegion removed(EditRegion edits, int offset, int length) {
+        if (edits == null) {
+            edits = new EditRegion(offset);
+        }
+        edits.removed(offset, length);
+        return edits;
+    }
+
+    private void scheduleParse(final JEditBuffer buffer, final String path, final BufferState state) {
+        cancelScheduled(state);
+        if (parser.isShutdown()) {
+            return;
+        }
+        state.scheduled = parser.schedule(new Runnable() {
+            public void run() {
+                parseBuffer(buffer, path, state);
+            }
+        }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels scheduled parses and stops the parser thread,
+     * interrupting any parse in progress, when the plugin is
+     * stopped. Buffers are only parsed on request after this.
+     */
+    public final void shutdown() {
+        for (BufferState state : pathToState.values()) {
+            synchronized (state) {
+                cancelScheduled(state);
+            }
+        }
+        pathToState.clear();
+        parser.shutdownNow();
+    }
+
+    public final void bufferClosed(Buffer buffer) {
+        BufferState state = pathToState.remove(buffer.getPath());
+        if (state != null) {
+            synchronized (state) {
+                cancelScheduled(state);
+            }
+        }
+    }
+
+    /**
+     * @return members of the latest completed parse of the
+     * buffer, which may be of an earlier version of its text,
+     * or null if it hasn't been parsed
+     */
+    public final RubyMembers getLatestMembers(Buffer buffer) {
+        BufferState state = pathToState.get(buffer.getPath());
+        return state != null ? state.members : null;
+    }
+
+    /**
+     * @return members of the latest completed parse if it is
+     * of the buffer's current text, else null
+     */
+    public final RubyMembers getCurrentMembers(Buffer buffer) {
+        return getCurrentMembers(buffer.getPath());
+    }
+
+    public final RubyMembers getCurrentMembers(String path) {
+        BufferState state = pathToState.get(path);
+        if (state != null) {
+            synchronized (state) {
+                if (state.membersVersion == state.version) {
+                    return state.members;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the member at offset in the latest completed parse,
+     * without waiting for a parse of the current text. If the buffer
+     * has been edited since, the offset is mapped back across the
+     * edited region: a member before the region is returned as it
+     * is, a member after it shifted, and a member around it with
+     * only its end shifted, as its start and name are untouched.
+     * Members recovered around a syntax error are used like any
+     * other.
+     *
+     * @return member at offset, or null if the buffer hasn't been
+     * parsed, nothing could be recovered from its text, or the
+     * member at offset may have been moved by the edits
+     */
+    public final Member getParsedMemberAt(Buffer buffer, int offset) {
+        return getParsedMemberAt(buffer.getPath(), offset);
+    }
+
+    public final Member getParsedMemberAt(String path, int offset) {
+        BufferState state = pathToState.get(path);
+        if (state != null) {
+            synchronized (state) {
+                RubyMembers members = state.members;
+                if (members == null || members.containsErrors()) {
+                    return null;
+                } else if (state.membersVersion == state.version) {
+                    return members.getMemberAt(offset);
+                } else if (state.editsKnown && state.edits != null) {
+                    return getMemberAcross(state.edits, members, offset);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Member getMemberAcross(EditRegion edits, RubyMembers members, int offset) {
+        int delta = edits.getDelta();
+        int oldOffset;
+        if (offset <= edits.getStart()) {
+            oldOffset = offset;
+        } else if (offset >= edits.getEnd()) {
+            oldOffset = offset - delta;
+        } else {
+            return null;
+        }
+
+        Member member = members.getMemberAt(oldOffset);
+        int nameEnd = member.getStartOffset() + member.getCompositeName().length();
+
+        if (member.getEndOffset() <= edits.getStart()) {
+            return member;
+        } else if (member.getStartOuterOffset() >= edits.getOldEnd()) {
+            return member.copyShifted(delta);
+        } else if (nameEnd <= edits.getStart() && edits.getOldEnd() < member.getEndOffset()) {
+            Member copy = member.copyShifted(0);
+            copy.setEndOffset(member.getEndOffset() + delta);
+            return copy;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the parse of the buffer's current text, parsing it
+     * on the caller's thread if no completed parse is of the
+     * current version. The parser's per-file lock makes a caller
+     * wait only if the buffer is being parsed in the background.
+     */
+    public final RubyMembers getMembers(Buffer buffer) {
+        return getMembers(buffer, buffer.getPath());
+    }
+
+    public final RubyMembers getMembers(JEditBuffer buffer, String path) {
+        BufferState state = getState(path);
+        String text;
+        int version;
+
+        buffer.readLock();
+        try {
+            synchronized (state) {
+                if (state.members != null && state.membersVersion == state.version) {
+                    return state.members;
+                }
+                cancelScheduled(state);
+                version = read(state);
+            }
+            text = buffer.getText(0, buffer.getLength());
+        } finally {
+            buffer.readUnlock();
+        }
+
+        return parse(text, path, version, state);
+    }
+
+    private void parseBuffer(JEditBuffer buffer, String path, BufferState state) {
+        String text;
+        int version;
+
+        buffer.readLock();
+        try {
+            synchronized (state) {
+                version = read(state);
+            }
+            text = buffer.getText(0, buffer.getLength());
+        } finally {
+            buffer.readUnlock();
+        }
+        parse(text, path, version, state);
+
+        if (buffer instanceof Buffer) {
+            matchStructure((Buffer)buffer);
+        }
+    }
+
+    /**
+     * Starts recording edits made after the text is read,
+     * as they are the edits the parse of it won't include.
+     */
+    private static int read(BufferState state) {
+        state.readVersion = state.version;
+        state.editsSinceRead = null;
+        return state.version;
+    }
+
+    /**
+     * Has text areas showing the buffer match structure at
+     * the caret again, without moving the caret.
+     */
+    private static void matchStructure(final Buffer buffer) {
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                View view = jEdit.getFirstView();
+                while (view != null) {
+                    for (EditPane pane : view.getEditPanes()) {
+                        if (pane.getBuffer() == buffer) {
+                            JEditTextArea textArea = pane.getTextArea();
+                            textArea.moveCaretPosition(textArea.getCaretPosition(), false);
+                        }
+                    }
+                    view = view.getNext();
+                }
+            }
+        });
+    }
+
+    /**
+     * Parses text and publishes the result, unless
+     * a later version has been published meanwhile.
+     */
+    private static RubyMembers parse(String text, String path, int version, BufferState state) {
+        RubyMembers members = RubyParser.getMembers(text, path);
+        synchronized (state) {
+            if (state.members == null || state.membersVersion < version) {
+                state.members = members;
+                state.membersVersion = version;
+                state.editsKnown = version == state.readVersion;
+                if (state.editsKnown) {
+                    state.edits = state.editsSinceRead;
+                    state.readVersion = NO_READ;
+                }
+            }
+        }
+        return members;
+    }
+
+    private static void cancelScheduled(BufferState state) {
+        if (state.scheduled != null) {
+            state.scheduled.cancel(false);
+            state.scheduled = null;
+        }
+    }
+
+    private BufferState getState(String path) {
+        BufferState state = pathToState.get(path);
+        if (state == null) {
+            state = new BufferState();
+            BufferState existing = pathToState.putIfAbsent(path, state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
+    private static final class BufferState {
+        private int version;
+        private volatile RubyMembers members;
+        private int membersVersion;
+        private Future<?> scheduled;
+        private EditRegion edits;
+        private boolean editsKnown;
+        private int readVersion = NO_READ;
+        private EditRegion editsSinceRead;
+    }
+}
@@ -25,8 +25,8 @@ import org.jrubyparser.NodeVisitor;
 
 import org.jedit.ruby.ast.*;
 import org.jedit.ruby.RubyPlugin;
-import org.jrubyparser.lexer.SyntaxException;
 
+import java.io.File;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.ArrayList;
@@ -43,9 +43,9 @@ final class RubyNodeRubyVisitor extends AbstractRubyVisitor implements NodeVisit
     private final List<String> namespaceNames;
     private final List<String> compositeNamespaceNames;
     private final LinkedList<Member> currentMember;
-    private int methodIndex;
 
-    private final List<Member> methods;
+    private final String filePath;
+    private final String fileName;
     private final List<RubyParser.WarningListener> problemListeners;
     private final LineCounter lineCounter;
     private final NameRubyVisitor nameVisitor;
@@ -54,20 +54,20 @@ final class RubyNodeRubyVisitor extends AbstractRubyVisitor implements NodeVisit
     private boolean underModuleNode;
     private Root root;
 
-    public RubyNodeRubyVisitor(LineCounter lineCounts, List<Member> methodMembers, List<RubyParser.WarningListener> listeners) {
+    public RubyNodeRubyVisitor(String filePath, LineCounter lineCounts, List<RubyParser.WarningListener> listeners, int textLength) {
         inIfNode = false;
         underModuleNode = false;
         lineCounter = lineCounts;
         namespaceNames = new ArrayList<String>();
         compositeNamespaceNames = new ArrayList<String>();
         currentMember = new LinkedList<Member>();
-        root = new Root(RubyPlugin.getEndOfFileOffset());
+        root = new Root(textLength);
         currentMember.add(root);
         nameVisitor = new NameRubyVisitor();
         problemListeners = listeners;
-        methods = methodMembers;
+        this.filePath = filePath;
+        fileName = new File(filePath).getName();
         methodCall = null;
-        methodIndex = 0;
     }
 
     public final List<Member> getMembers() {
@@ -138,20 +138,34 @@ final class RubyNodeRubyVisitor extends AbstractRubyVisitor implements NodeVisit
         Node superNode = classNode.getSuper();
 
         if (superNode != null) {
-            superNode.accept(nameVisitor);
-            StringBuffer name = new StringBuffer();
-            for (String namespace : nameVisitor.namespaces) {
-                name.append(namespace).append("::");
-            }
-            nameVisitor.namespaces.clear();
-            name.append(nameVisitor.name);
-            ((ClassMember)member).setSuperClassName(name.toString());
+            ((ClassMember)member).setSuperClassName(getConstantName(superNode));
         }
 
         underModuleNode = tempUnderModuleNode;
         return null;
     }
 
+    private String getConstantName(Node node) {
+        node.accept(nameVisitor);
+        StringBuffer name = new StringBuffer();
+        for (String namespace : nameVisitor.namespaces) {
+            name.append(namespace).append("::");
+        }
+        nameVisitor.namespaces.clear();
+        name.append(nameVisitor.name);
+        return name.toString();
+    }
+
+    private void addIncludedModuleNames(ParentMember parent, Node nodeArgs) {
+        if (nodeArgs instanceof ListNode) {
+            for (Node child : nodeArgs.childNodes()) {
+                if (child instanceof ConstNode || child instanceof Colon2Node) {
+                    parent.addIncludedModuleName(getConstantName(child));
+                }
+            }
+        }
+    }
+
     private Member addParentNode(String memberType, Node node, IScopingNode scopeNode, Node bodyNode) {
         visitNode(node);
         scopeNode.getCPath().accept(nameVisitor);
@@ -227,31 +241,17 @@ final class RubyNodeRubyVisitor extends AbstractRubyVisitor implements NodeVisit
 
     public final Object visitDefnNode(DefnNode node) {
         visitNode(node);
-        Member method;
-        try {
-            method = getMember("def", methodIndex, methods, node.getName(), node.getNameNode().getPosition(), node.getPosition());
-        } catch (IndexAdjustmentException e) {
-            methodIndex = e.getIndex();
-            method = getMethodNoCheckedException(methodIndex, methods, node.getName(), node.getPosition());
-        }
-        methodIndex++;
-        Member parent = currentMember.getLast();
-        parent.addChildMember(method);
+        SourcePosition namePosition = node.getNameNode().getPosition();
+        Method method = createMethod(node.getName(), namePosition.getStartOffset());
+        populateOffsets(method, namePosition, node.getPosition(), "def");
+        currentMember.getLast().addChildMember(method);
         return null;
     }
 
-    private Member getMethodNoCheckedException(int index, List<Member> members, String memberName, SourcePosition position) {
-        try {
-            return getMember("def", index, members, memberName, position, position);
-        } catch (IndexAdjustmentException e) {
-            return throwCantFindException("def", memberName, position);
-        }
-    }
-
     public final Object visitDefsNode(DefsNode node) {
         visitNode(node);
 
-        Method method = (Method)methods.get(methodIndex++);
+        Method method = createMethod(node.getName(), node.getNameNode().getPosition().getStartOffset());
         populateReceiverName(method, node);
         populateOffsets(method, node.getPosition(), node.getPosition(), "def");
 
@@ -264,6 +264,80 @@ final class RubyNodeRubyVisitor extends AbstractRubyVisitor implements NodeVisit
         return null;
     }
 
+    /**
+     * Creates method with the parameter list that follows
+     * its name in the text, joining any continued lines.
+     */
+    private Method createMethod(String name, int offset) {
+        String parameters = "";
+        String text = lineCounter.getText();
+        int nameIndex = text.indexOf(name, offset);
+
+        if (nameIndex != -1) {
+            int line = lineCounter.getLineAtOffset(nameIndex);
+            if (line < lineCounter.getLineCount()) {
+                int index = nameIndex + name.length() - lineCounter.getStartOffset(line);
+                parameters = upUntil(";", lineCounter.getLine(line).substring(index));
+                if (parameters.indexOf('\\') != -1) {
+                    parameters = concatLines(line, parameters);
+                }
+                parameters = formatParameters(parameters);
+            }
+        }
+
+        return new Method(name, parameters, filePath, fileName, false);
+    }
+
+    private String concatLines(int line, String parameters) {
+        boolean continueLine = true;
+        while (continueLine) {
+            line++;
+            parameters = parameters.substring(0, parameters.length() - 1).trim(); // remove \
+            if (line < lineCounter.getLineCount()) {
+                parameters += lineCounter.getLine(line).trim();
+                continueLine = parameters.indexOf('\\') != -1;
+            } else {
+                break;
+            }
+        }
+        return parameters;
+    }
+
+    private static String formatParameters(String parameters) {
+        parameters = upUntil("#", parameters);
+        parameters = upUntil(";", parameters);
+
+        int endParenthesis = parameters.indexOf(")");
+        if (endParenthesis != -1 && endParenthesis < parameters.length() - 1) {
+            parameters = parameters.substring(0, endParenthesis + 1);
+        }
+
+        parameters = parameters.trim();
+        if (parameters.length() > 0 && !parameters.startsWith("(") && !parameters.endsWith(")")) {
+            parameters = '(' + parameters + ')';
+        }
+
+        if (parameters.length() == 2) {
+            parameters = "";
+        } else if (parameters.length() > 2) {
+            String vars = parameters.substring(1, parameters.length() - 1).trim();
+            if (vars.length() == 0) {
+                parameters = "";
+            } else {
+                parameters = '(' + vars + ')';
+            }
+        }
+        return parameters;
+    }
+
+    private static String upUntil(String character, String parameters) {
+        int index = parameters.indexOf(character);
+        if (index != -1) {
+            parameters = parameters.substring(0, index);
+        }
+        return parameters;
+    }
+
     private void populateReceiverName(Method method, DefsNode node) {
         String methodName = node.getName();
         Node receiverNode = node.getReceiver();
@@ -294,33 +368,6 @@ final class RubyNodeRubyVisitor extends AbstractRubyVisitor implements NodeVisit
         }
     }
 
-    private Member getMember(String memberType, int index, List<Member> members, String memberName, SourcePosition startPosition, SourcePosition endPosition) throws IndexAdjustmentException {
-        Member member;
-        try {
-            member = members.get(index);
-            String shortName = member.getShortName();
-            if (!memberName.equals(shortName)) {
-                index++;
-                while(index < members.size()) {
-                    member = members.get(index);
-                    if (memberName.equals(member.getShortName())) {
-                        throw new IndexAdjustmentException(index);
-                    } else {
-                        index++;
-                    }
-                }
-                throw new Exception();
-            }
-        } catch (Exception e) {
-            if (e instanceof IndexAdjustmentException) {
-                throw (IndexAdjustmentException)e;
-            } else {
-                return throwCantFindException(memberType, memberName, endPosition);
-            }
-        }
-        return populateOffsets(member, startPosition, endPosition, memberType);
-    }
-
     private Member populateOffsets(Member member, SourcePosition position, SourcePosition endPosition, String memberType) {
         member.setStartOffset(getStartOffset(position, member));
         member.setEndOffset(getEndOffset(endPosition));
@@ -328,14 +375,6 @@ final class RubyNodeRubyVisitor extends AbstractRubyVisitor implements NodeVisit
         return member;
     }
 
-    private Member throwCantFindException(String memberType, String memberName, SourcePosition position) {
-        String message = "parser can't find " + memberType + " " + memberName;
-        for (RubyParser.WarningListener listener : problemListeners) {
-            listener.error(position, message);
-        }
-        throw new SyntaxException(SyntaxException.PID.GRAMMAR_ERROR, position, message);
-    }
-
     public Object visitRootNode(RootNode node) {
         visitNode(node);
         RubyPlugin.log("",getClass());
@@ -411,6 +450,10 @@ final class RubyNodeRubyVisitor extends AbstractRubyVisitor implements NodeVisit
         RubyPlugin.log(": " + name, getClass());
         Member parent = currentMember.getLast();
 
+        if (name.equals("include") && parent instanceof ParentMember) {
+            addIncludedModuleNames((ParentMember)parent, node.getArgs());
+        }
+
         if (parent instanceof Root ||
                 parent instanceof ClassMember ||
                 parent instanceof Module ||
@@ -547,18 +590,6 @@ final class RubyNodeRubyVisitor extends AbstractRubyVisitor implements NodeVisit
         }
     }
 
-    private static final class IndexAdjustmentException extends Exception {
-        private final int index;
-
-        public IndexAdjustmentException(int index) {
-            this.index = index;
-        }
-
-        public final int getIndex() {
-            return index;
-        }
-    }
-
     private static final class NameRubyVisitor extends AbstractRubyVisitor {
         private final List<String> namespaces;
         private String name;
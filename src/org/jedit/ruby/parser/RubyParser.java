@@ -19,7 +19,6 @@
  */
 package org.jedit.ruby.parser;
 
-import org.gjt.sp.jedit.View;
 import org.gjt.sp.jedit.Buffer;
 import org.jedit.ruby.RubyPlugin;
 import org.jedit.ruby.ast.*;
@@ -32,12 +31,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>Parses ruby file.</p>
- * <p><i>
- * Not thread safe.</i>
- * Should only be accessed by one thread at a time.
+ * <p>
+ * Thread safe. Parser state is created per parse, so different
+ * files are parsed in parallel; parses of the same file are
+ * serialized, as each builds on the file's previous result.
  * </p>
  *
  * @author robmckinnon at users.sourceforge.net
@@ -45,32 +46,37 @@ import java.io.File;
 public final class RubyParser {
 
     private static final Member[] EMPTY_MEMBER_ARRAY = new Member[0];
+    private static final int DEFAULT_CACHE_KILOBYTES = 8192;
+    private static final int FILE_LOCK_COUNT = 32;
+    private static final int MAX_RECOVERIES = 3;
 
     private static final RubyParser instance = new RubyParser();
+    private static final AtomicInteger parseCount = new AtomicInteger();
 
-    private final RubyParser.LogWarningListener logListener;
-    private final MemberMatcher methodMatcher;
-
-    private final Map<File, Long> fileToLastModified;
-    private final Map<File, String> fileToOldText;
-    private final Map<File, Member[]> fileToMembers;
-    private final Map<File, RubyMembers> fileToLastGoodMembers;
-    private final Map<File, List<Problem>> fileToProblems;
+    private final ParseCache cache;
+    private final Map<File, EditRegion> fileToEditRegion;
+    private final Object[] fileLocks;
 
     private RubyParser() {
-        logListener = new LogWarningListener();
-        methodMatcher = new MemberMatcher.MethodMatcher();
-        fileToLastModified = new HashMap<File, Long>();
-        fileToOldText = new HashMap<File, String>();
-        fileToMembers = new HashMap<File, Member[]>();
-        fileToLastGoodMembers = new HashMap<File, RubyMembers>();
-        fileToProblems = new HashMap<File, List<Problem>>();
+        cache = new ParseCache(DEFAULT_CACHE_KILOBYTES * 1024L);
+        fileToEditRegion = new HashMap<File, EditRegion>();
+        fileLocks = new Object[FILE_LOCK_COUNT];
+        for (int i = 0; i < fileLocks.length; i++) {
+            fileLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Sets the estimated memory, in kilobytes, that parse results
+     * of files may retain before the least recently parsed are
+     * discarded.
+     */
+    public static void setCacheBudget(int kilobytes) {
+        instance.setCacheBudget(kilobytes * 1024L);
     }
 
-    public static RubyMembers getMembers(View view) {
-        String text = view.getTextArea().getText();
-        String filePath = view.getBuffer().getPath();
-        return getMembers(text, filePath);
+    private synchronized void setCacheBudget(long bytes) {
+        cache.setBudget(bytes);
     }
 
     public static RubyMembers getMembers(String text, String filePath) {
@@ -82,7 +88,60 @@ public final class RubyParser {
     }
 
     public static List<Member> getMembersAsList(String text, String filePath, WarningListener listener) {
-        return instance.createMembersAsList(text, filePath, listener);
+        return parseRecovering(text, filePath, listener, new LogWarningListener());
+    }
+
+    /**
+     * Returns the number of times text has been parsed, including
+     * reparses of edited regions and of text with errors blanked.
+     * Requests answered from cached parse results aren't counted.
+     */
+    public static int getParseCount() {
+        return parseCount.get();
+    }
+
+    /**
+     * Returns the hash parse results are matched to text by.
+     */
+    public static long getHash(String text) {
+        return ParseCache.hash(text, 0, text.length());
+    }
+
+    /**
+     * Records text inserted in a buffer since its file was last
+     * parsed, so that only the edited region is reparsed.
+     */
+    public static void textInserted(String filePath, int offset, int length) {
+        instance.textInserted(new File(filePath), offset, length);
+    }
+
+    /**
+     * Records text removed from a buffer since its file was last
+     * parsed, so that only the edited region is reparsed.
+     */
+    public static void textRemoved(String filePath, int offset, int length) {
+        instance.textRemoved(new File(filePath), offset, length);
+    }
+
+    private synchronized void textInserted(File file, int offset, int length) {
+        if (cache.contains(file)) {
+            getEditRegion(file, offset).inserted(offset, length);
+        }
+    }
+
+    private synchronized void textRemoved(File file, int offset, int length) {
+        if (cache.contains(file)) {
+            getEditRegion(file, offset).removed(offset, length);
+        }
+    }
+
+    private EditRegion getEditRegion(File file, int offset) {
+        EditRegion edit = fileToEditRegion.get(file);
+        if (edit == null) {
+            edit = new EditRegion(offset);
+            fileToEditRegion.put(file, edit);
+        }
+        return edit;
     }
 
     public static boolean hasLastGoodMembers(Buffer buffer) {
@@ -94,80 +153,253 @@ public final class RubyParser {
     }
 
     private synchronized boolean hasLastGoodMembers(String path) {
-        return fileToLastGoodMembers.containsKey(new File(path));
+        return getLastGoodMembers(path) != null;
     }
 
     private synchronized RubyMembers getLastGoodMembers(String path) {
-        return fileToLastGoodMembers.get(new File(path));
+        ParseCache.Entry entry = cache.get(new File(path));
+        return entry != null ? entry.getLastGoodMembers() : null;
     }
 
-    private synchronized RubyMembers createMembers(String text, String path, WarningListener listener, boolean forceReparse) {
-        Member[] members;
-        List<Problem> problems;
+    /**
+     * Parses of a file are serialized by one of a fixed set of
+     * locks chosen by the file, while the cache and edit regions
+     * are only locked to read or update them.
+     */
+    private RubyMembers createMembers(String text, String path, WarningListener listener, boolean forceReparse) {
         File file = new File(path);
+        synchronized (getLock(file)) {
+            EditRegion edit;
+            ParseCache.Entry previous;
+            synchronized (this) {
+                edit = fileToEditRegion.remove(file);
+                previous = cache.get(file);
+            }
+            long hash = ParseCache.hash(text, 0, text.length());
+            ParseCache.Entry entry;
+
+            if (!forceReparse && previous != null && edit == null && previous.matches(hash, text.length())) {
+                entry = previous;
+            } else {
+                entry = createEntry(text, path, listener, forceReparse, hash, previous, edit);
+                synchronized (this) {
+                    cache.put(file, entry);
+                }
+            }
 
-        if(!forceReparse
-                && fileToMembers.containsKey(file)
-                && fileToLastModified.get(file) == file.lastModified()
-                && fileToOldText.get(file).equals(text)) {
-            members = fileToMembers.get(file);
-            problems = fileToProblems.get(file);
-        } else {
-            List<Member> memberList = createMembersAsList(text, path, listener);
-            problems = logListener.getProblems();
-            members = memberList != null ? memberList.toArray(EMPTY_MEMBER_ARRAY) : null;
+            return new RubyMembers(entry.getMembers(), entry.getProblems(), text.length());
+        }
+    }
 
-            fileToMembers.put(file, members);
+    private static ParseCache.Entry createEntry(String text, String path, WarningListener listener, boolean forceReparse,
+                                                long hash, ParseCache.Entry previous, EditRegion edit) {
+        LogWarningListener log = new LogWarningListener();
+        List<Member> memberList = null;
+        List<Problem> problems;
+        if (!forceReparse && previous != null && edit != null && previous.getMembers() != null
+                && getError(previous.getProblems()) == null) {
+            memberList = reparseRegion(text, previous, edit, path, log);
+        }
 
-            if (members != null) {
-                fileToLastGoodMembers.put(file, new RubyMembers(members, null, text.length()));
-            } else if (fileToLastGoodMembers.containsKey(file)) {
-                RubyMembers lastGoodMembers = fileToLastGoodMembers.get(file);
-                lastGoodMembers.setProblems(problems);
-            }
+        if (memberList != null) {
+            problems = spliceProblems(text, previous, edit, log.getProblems());
+            reportProblems(problems, path, listener);
+        } else {
+            log = new LogWarningListener();
+            memberList = parseRecovering(text, path, listener, log);
+            problems = log.getProblems();
+        }
+        Member[] members = memberList != null ? memberList.toArray(EMPTY_MEMBER_ARRAY) : null;
 
-            fileToLastModified.put(file, file.lastModified());
-            fileToOldText.put(file, text);
-            fileToProblems.put(file, problems);
+        RubyMembers lastGoodMembers = previous != null ? previous.getLastGoodMembers() : null;
+        if (members != null) {
+            lastGoodMembers = new RubyMembers(members, null, text.length());
+        } else if (lastGoodMembers != null) {
+            lastGoodMembers.setProblems(problems);
         }
 
-        return new RubyMembers(members, problems, text.length());
+        int lineCount = countLines(text, 0, text.length());
+        return new ParseCache.Entry(text, hash, lineCount, members, problems, lastGoodMembers);
     }
 
-    private synchronized List<Member> createMembersAsList(String text, String filePath, WarningListener listener) {
+    private Object getLock(File file) {
+        return fileLocks[(file.hashCode() & 0x7fffffff) % fileLocks.length];
+    }
+
+    private static List<Member> parse(String text, String filePath, WarningListener listener, LogWarningListener log) {
+        parseCount.incrementAndGet();
         LineCounter lineCounter = new LineCounter(text);
+        List<WarningListener> listeners = new ArrayList<WarningListener>(2);
+        listeners.add(log);
+        if (listener != null) {
+            listeners.add(listener);
+        }
+
+        return JRubyParser.getMembers(text, listeners, filePath, lineCounter);
+    }
 
-        List<Member> methods = createMembers(text, filePath, lineCounter, methodMatcher);
-        List<WarningListener> listeners = getListeners(listener);
+    /**
+     * Parses text, and if it has a syntax error, parses it again
+     * with the region holding the error blanked out, so members
+     * outside the region are kept. The error is still reported.
+     * Returns null if the text doesn't parse after a few regions
+     * are blanked, or if no members are left once it does.
+     */
+    private static List<Member> parseRecovering(String text, String filePath, WarningListener listener, LogWarningListener log) {
+        List<Member> members = parse(text, filePath, listener, log);
+        List<Problem> problems = log.getProblems();
+
+        for (int i = 0; members == null && i < MAX_RECOVERIES; i++) {
+            Problem error = getError(problems);
+            String recoverText = error != null ? ErrorRecovery.blankBrokenRegion(text, error.getLine()) : null;
+            if (recoverText == null || recoverText.equals(text)) {
+                break;
+            }
 
-        return JRubyParser.getMembers(text, methods, listeners, filePath, lineCounter);
+            text = recoverText;
+            LogWarningListener recoveryLog = new LogWarningListener();
+            members = parse(text, filePath, null, recoveryLog);
+            problems = recoveryLog.getProblems();
+            if (members != null && members.isEmpty()) {
+                members = null;
+                break;
+            }
+        }
+        return members;
     }
 
-    private List<WarningListener> getListeners(WarningListener listener) {
-        logListener.clear();
-        List<WarningListener> listeners = new ArrayList<WarningListener>();
-        listeners.add(logListener);
-        if(listener != null) {
-            listeners.add(listener);
+    private static Problem getError(List<Problem> problems) {
+        for (Problem problem : problems) {
+            if (problem instanceof Error) {
+                return problem;
+            }
         }
-        return listeners;
+        return null;
     }
 
-    private static List<Member> createMembers(String text, String filePath, LineCounter lineCounter, MemberMatcher matcher) {
-        List<MemberMatcher.Match> matches = matcher.getMatches(text, lineCounter);
-        List<Member> members = new ArrayList<Member>();
+    /**
+     * Reparses the top level members touched by the edited region,
+     * along with any code between them and their unedited neighbours,
+     * then splices them into the members of the text last parsed.
+     * Members after the region are copied, shifted by the change in
+     * length, as the previous members may still be in use.
+     * <p/>
+     * Returns null if the edit events don't match the text, or if the
+     * region doesn't parse on its own, e.g. while an <code>end</code>
+     * is missing, in which case the whole text is reparsed.
+     */
+    private static List<Member> reparseRegion(String text, ParseCache.Entry previous, EditRegion edit, String path, LogWarningListener log) {
+        Member[] oldMembers = previous.getMembers();
+
+        if (text.length() != previous.getLength() + edit.getDelta() || edit.getEnd() > text.length()) {
+            return null;
+        }
+
+        int before = 0;
+        int regionStart = 0;
+        while (before < oldMembers.length && oldMembers[before].getEndOffset() < edit.getStart()) {
+            regionStart = oldMembers[before].getEndOffset();
+            before++;
+        }
+
+        int after = oldMembers.length;
+        int oldRegionEnd = previous.getLength();
+        while (after > before && oldMembers[after - 1].getStartOuterOffset() > edit.getOldEnd()) {
+            after--;
+            oldRegionEnd = oldMembers[after].getStartOuterOffset();
+        }
+
+        int regionEnd = oldRegionEnd + edit.getDelta();
+        if ((before > 0 && !previous.memberUnchanged(text, before - 1, 0))
+                || (after < oldMembers.length && !previous.memberUnchanged(text, after, edit.getDelta()))) {
+            return null;
+        }
 
-        for(MemberMatcher.Match match : matches) {
-            String name = match.value().trim();
-            int startOffset = match.startOffset();
-//            int startOuterOffset = match.startOuterOffset;
-            String params = match.params();
-            members.add(matcher.createMember(name, filePath, startOffset, params, text));
+        List<Member> regionMembers = parse(text.substring(regionStart, regionEnd), path, null, log);
+        if (regionMembers == null) {
+            return null;
         }
 
+        List<Member> members = new ArrayList<Member>(before + regionMembers.size() + oldMembers.length - after);
+        for (int i = 0; i < before; i++) {
+            members.add(oldMembers[i]);
+        }
+        for (Member member : regionMembers) {
+            shiftOffsets(member, regionStart);
+            members.add(member);
+        }
+        for (int i = after; i < oldMembers.length; i++) {
+            members.add(edit.getDelta() == 0 ? oldMembers[i] : oldMembers[i].copyShifted(edit.getDelta()));
+        }
+
+        edit.extendTo(regionStart, regionEnd);
         return members;
     }
 
+    private static void shiftOffsets(Member member, int shift) {
+        member.setStartOuterOffset(member.getStartOuterOffset() + shift);
+        member.setStartOffset(member.getStartOffset() + shift);
+        member.setEndOffset(member.getEndOffset() + shift);
+
+        if (member.hasChildMembers()) {
+            for (Member child : member.getChildMembersAsList()) {
+                shiftOffsets(child, shift);
+            }
+        }
+    }
+
+    /**
+     * Returns previous problems outside the reparsed region, with
+     * lines after it shifted, and the reparsed region's problems.
+     * A region followed by a member ends on that member's first
+     * line, so previous problems on that line are kept.
+     */
+    private static List<Problem> spliceProblems(String text, ParseCache.Entry previous, EditRegion edit, List<Problem> regionProblems) {
+        List<Problem> oldProblems = previous.getProblems();
+        List<Problem> problems = new ArrayList<Problem>();
+
+        if (!oldProblems.isEmpty() || !regionProblems.isEmpty()) {
+            int startLine = countLines(text, 0, edit.getStart());
+            int oldEndLine = previous.getLineCount() - countLines(text, edit.getEnd(), text.length());
+            int lineShift = startLine + countLines(text, edit.getStart(), edit.getEnd()) - oldEndLine;
+            int firstShiftedLine = edit.getEnd() < text.length() ? oldEndLine : oldEndLine + 1;
+
+            for (Problem problem : oldProblems) {
+                if (problem.getLine() < startLine) {
+                    problems.add(problem);
+                } else if (problem.getLine() >= firstShiftedLine) {
+                    problems.add(new Warning(problem.getShortName(), problem.getLine() + lineShift));
+                }
+            }
+            for (Problem problem : regionProblems) {
+                problems.add(new Warning(problem.getShortName(), problem.getLine() + startLine));
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Reports problems of a spliced parse to the listener, as it
+     * wasn't given the problems of the unedited members.
+     */
+    private static void reportProblems(List<Problem> problems, String path, WarningListener listener) {
+        if (listener != null) {
+            for (Problem problem : problems) {
+                listener.warn(null, path, problem.getLine(), problem.getShortName());
+            }
+        }
+    }
+
+    private static int countLines(String text, int start, int end) {
+        int lines = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
     /**
      * Interface defining methods called back
      * with parsing warnings.
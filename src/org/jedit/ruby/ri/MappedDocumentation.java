@@ -0,0 +1,99 @@
+/*
+ * MappedDocumentation.java - RDoc comments read from a memory mapped file
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.ri;
+
+import org.jedit.ruby.ast.DocumentationSource;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * RDoc documentation comments read on demand from a memory
+ * mapped copy of the {@link RDocIndex} documentation file,
+ * so comment text is only decoded when displayed.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class MappedDocumentation implements DocumentationSource {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final MappedByteBuffer buffer;
+
+    private MappedDocumentation(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Maps the supplied file, copying the documentation stream
+     * to it first unless it exists. The file's name must identify
+     * the documentation, e.g. by the checksum of its index, as an
+     * existing file is mapped as it is.
+     */
+    static MappedDocumentation map(InputStream docs, File file) throws IOException {
+        if (!file.exists()) {
+            copy(docs, file);
+        } else {
+            docs.close();
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return new MappedDocumentation(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void copy(InputStream docs, File file) throws IOException {
+        File copy = new File(file.getPath() + ".tmp");
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(copy));
+        try {
+            byte[] bytes = new byte[64 * 1024];
+            int length;
+            while ((length = docs.read(bytes)) != -1) {
+                output.write(bytes, 0, length);
+            }
+        } finally {
+            output.close();
+            docs.close();
+        }
+
+        file.delete();
+        if (!copy.renameTo(file)) {
+            throw new IOException("could not create " + file.getPath());
+        }
+    }
+
+    public final String getDocumentation(int offset, int length) {
+        if (offset == RDocIndex.NONE) {
+            return "";
+        } else {
+            ByteBuffer comment = buffer.duplicate();
+            comment.position(offset);
+            comment.limit(offset + length);
+            return UTF_8.decode(comment).toString();
+        }
+    }
+}
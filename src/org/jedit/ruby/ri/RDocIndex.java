@@ -0,0 +1,244 @@
+/*
+ * RDocIndex.java - Compact binary index of RDoc class descriptions
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.ri;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the RDoc index written by {@link RDocIndexWriter}
+ * in one sequential pass.
+ * <p/>
+ * The index file contains a header, a string table,
+ * the names of the documentation sets and then one
+ * record per class. Names, namespaces and parameters are
+ * references into the string table. Documentation comments
+ * are stored as offset and length into a separate UTF-8
+ * encoded documentation file.
+ * <p/>
+ * When no documentation bytes are supplied comments are left
+ * unread, their position in the documentation file is available
+ * from {@link #getCommentOffset} and {@link #getCommentLength}
+ * while the handler is called.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class RDocIndex {
+
+    public static final String INDEX_FILE = "rdoc.index";
+    public static final String DOCS_FILE = "rdoc.docs";
+
+    static final int MAGIC = 0x52446f63;
+    static final int VERSION = 1;
+    public static final int NONE = -1;
+
+    static final int CLASS_METHOD = 1;
+    static final int SINGLETON = 2;
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Called back with each class read from the index.
+     */
+    public static interface Handler {
+        /**
+         * @param description class description
+         * @param set name of the documentation set the class belongs to
+         * @param fileName path relative to the set of the file the class was originally read from
+         */
+        void handleClass(ClassDescription description, String set, String fileName);
+    }
+
+    private final DataInputStream input;
+    private final byte[] docs;
+    private final Map<Description, int[]> commentPositions;
+    private String[] strings;
+
+    /**
+     * @param docs documentation file contents, or null to leave comments unread
+     */
+    public RDocIndex(InputStream indexStream, byte[] docs) {
+        input = new DataInputStream(new BufferedInputStream(indexStream, 64 * 1024));
+        this.docs = docs;
+        commentPositions = docs == null ? new IdentityHashMap<Description, int[]>() : null;
+    }
+
+    /**
+     * Reads every class in the index, passing each to the handler.
+     *
+     * @return number of classes read
+     */
+    public static int read(InputStream indexStream, byte[] docs, Handler handler) throws IOException {
+        return new RDocIndex(indexStream, docs).read(handler);
+    }
+
+    /**
+     * Reads every class in the index, passing each to the
+     * handler, and closes the index stream.
+     *
+     * @return number of classes read
+     */
+    public final int read(Handler handler) throws IOException {
+        try {
+            return readClasses(handler);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * @return offset of the unread comment of a description
+     * from the class currently being handled, or {@link #NONE}
+     */
+    public final int getCommentOffset(Description description) {
+        int[] position = commentPositions.get(description);
+        return position == null ? NONE : position[0];
+    }
+
+    /**
+     * @return byte length of the unread comment of a description
+     * from the class currently being handled
+     */
+    public final int getCommentLength(Description description) {
+        int[] position = commentPositions.get(description);
+        return position == null ? 0 : position[1];
+    }
+
+    private int readClasses(Handler handler) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("not an RDoc index");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported RDoc index version: " + version);
+        }
+
+        strings = readStrings();
+        String[] sets = new String[input.readInt()];
+        for (int i = 0; i < sets.length; i++) {
+            sets[i] = string();
+        }
+
+        int classCount = input.readInt();
+        for (int i = 0; i < classCount; i++) {
+            String set = sets[input.readInt()];
+            String fileName = string();
+            handler.handleClass(readClass(), set, fileName);
+            if (commentPositions != null) {
+                commentPositions.clear();
+            }
+        }
+        return classCount;
+    }
+
+    private String[] readStrings() throws IOException {
+        String[] table = new String[input.readInt()];
+        byte[] bytes = new byte[256];
+
+        for (int i = 0; i < table.length; i++) {
+            int length = input.readInt();
+            if (length > bytes.length) {
+                bytes = new byte[length * 2];
+            }
+            input.readFully(bytes, 0, length);
+            table[i] = new String(bytes, 0, length, ENCODING);
+        }
+        return table;
+    }
+
+    private ClassDescription readClass() throws IOException {
+        ClassDescription description = new ClassDescription();
+        description.setName(string());
+        description.setFullName(string());
+        description.setNamespace(string());
+        description.setSuperclass(string());
+        readComment(description);
+
+        int includeCount = input.readInt();
+        List<IncludedModule> includes = new ArrayList<IncludedModule>(includeCount);
+        for (int i = 0; i < includeCount; i++) {
+            IncludedModule include = new IncludedModule();
+            include.setName(string());
+            includes.add(include);
+        }
+        description.setIncludes(includes);
+        description.setInstanceMethods(readMethods());
+        description.setClassMethods(readMethods());
+        return description;
+    }
+
+    private List<MethodDescription> readMethods() throws IOException {
+        int count = input.readInt();
+        List<MethodDescription> methods = new ArrayList<MethodDescription>(count);
+
+        for (int i = 0; i < count; i++) {
+            MethodDescription method = new MethodDescription();
+            method.setName(string());
+            method.setFullName(string());
+            method.setNamespace(string());
+            method.setParameters(string());
+            method.setBlockParameters(string());
+            int flags = input.readByte();
+            method.setIsClassMethod((flags & CLASS_METHOD) != 0);
+            method.setIsSingleton((flags & SINGLETON) != 0);
+            readComment(method);
+            methods.add(method);
+        }
+        return methods;
+    }
+
+    private String string() throws IOException {
+        int index = input.readInt();
+        return index == NONE ? null : strings[index];
+    }
+
+    private void readComment(Description description) throws IOException {
+        int offset = input.readInt();
+        int length = input.readInt();
+
+        if (offset == NONE) {
+            description.setComment(null);
+        } else if (docs != null) {
+            description.setComment(new String(docs, offset, length, ENCODING));
+        } else {
+            commentPositions.put(description, new int[]{offset, length});
+        }
+    }
+
+    /**
+     * Reads the whole of the supplied stream, closing it afterwards.
+     */
+    public static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 * 1024);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int length;
+            while ((length = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, length);
+            }
+        } finally {
+            stream.close();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * RDocIndexWriter.java - Writes RDoc class descriptions to a binary index
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.ri;
+
+import java.beans.XMLDecoder;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Successor to {@link XmlToBinary}, writes all class descriptions
+ * found under an input directory to a single {@link RDocIndex}
+ * file plus a documentation file.
+ * <p/>
+ * Each directory directly under the input directory is treated
+ * as a documentation set, e.g. ruby-1.9.3_rails-3.2.6. Class
+ * descriptions are read from either the java-xml files produced by
+ * rdoc_to_java.rb or the serialized .dat files made by XmlToBinary.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class RDocIndexWriter {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final Map<String, Integer> stringToIndex = new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> docToOffset = new HashMap<String, Integer>();
+    private final ByteArrayOutputStream docs = new ByteArrayOutputStream(1024 * 1024);
+    private final ByteArrayOutputStream records = new ByteArrayOutputStream(1024 * 1024);
+    private final DataOutputStream output = new DataOutputStream(records);
+    private final List<String> sets = new ArrayList<String>();
+    private int classCount;
+
+    /**
+     * Adds a class description to the index.
+     *
+     * @param set name of the documentation set the class belongs to
+     * @param fileName path the class was stored under relative to the set, e.g. Array/Array.dat
+     */
+    public final void add(ClassDescription description, String set, String fileName) throws IOException {
+        int setIndex = sets.indexOf(set);
+        if (setIndex == -1) {
+            setIndex = sets.size();
+            sets.add(set);
+        }
+        output.writeInt(setIndex);
+        writeString(fileName);
+        writeString(description.getName());
+        writeString(description.getFullName());
+        writeString(description.getNamespace());
+        writeString(description.getSuperclass());
+        writeDocumentation(description.getComment());
+
+        List<IncludedModule> includes = description.getIncludes();
+        if (includes == null) {
+            output.writeInt(0);
+        } else {
+            output.writeInt(includes.size());
+            for (IncludedModule include : includes) {
+                writeString(include.getName());
+            }
+        }
+
+        writeMethods(description.getInstanceMethods());
+        writeMethods(description.getClassMethods());
+        classCount++;
+    }
+
+    private void writeMethods(List<MethodDescription> methods) throws IOException {
+        if (methods == null) {
+            output.writeInt(0);
+        } else {
+            output.writeInt(methods.size());
+            for (MethodDescription method : methods) {
+                writeString(method.getName());
+                writeString(method.getFullName());
+                writeString(method.getNamespace());
+                writeString(method.getParameters());
+                writeString(method.getBlockParameters());
+                int flags = (method.isClassMethod() ? RDocIndex.CLASS_METHOD : 0)
+                        | (method.isSingleton() ? RDocIndex.SINGLETON : 0);
+                output.writeByte(flags);
+                writeDocumentation(method.getComment());
+            }
+        }
+    }
+
+    private void writeString(String string) throws IOException {
+        output.writeInt(string == null ? RDocIndex.NONE : stringIndex(string));
+    }
+
+    private int stringIndex(String string) {
+        Integer index = stringToIndex.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringToIndex.put(string, index);
+        }
+        return index;
+    }
+
+    private void writeDocumentation(String documentation) throws IOException {
+        if (documentation == null) {
+            output.writeInt(RDocIndex.NONE);
+            output.writeInt(0);
+        } else {
+            byte[] bytes = documentation.getBytes(ENCODING);
+            Integer offset = docToOffset.get(documentation);
+            if (offset == null) {
+                offset = docs.size();
+                docs.write(bytes);
+                docToOffset.put(documentation, offset);
+            }
+            output.writeInt(offset);
+            output.writeInt(bytes.length);
+        }
+    }
+
+    /**
+     * Writes the index and documentation files.
+     */
+    public final void write(File indexFile, File docsFile) throws IOException {
+        output.flush();
+        DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            index.writeInt(RDocIndex.MAGIC);
+            index.writeInt(RDocIndex.VERSION);
+
+            for (String set : sets) {
+                stringIndex(set);
+            }
+            index.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(ENCODING);
+                index.writeInt(bytes.length);
+                index.write(bytes);
+            }
+
+            index.writeInt(sets.size());
+            for (String set : sets) {
+                index.writeInt(stringIndex(set));
+            }
+
+            index.writeInt(classCount);
+            records.writeTo(index);
+        } finally {
+            index.close();
+        }
+
+        OutputStream docsOutput = new BufferedOutputStream(new FileOutputStream(docsFile));
+        try {
+            docs.writeTo(docsOutput);
+        } finally {
+            docsOutput.close();
+        }
+    }
+
+    /**
+     * Adds every class description found in the documentation
+     * set directories under the supplied directory.
+     */
+    public final void addDirectory(File inputDirectory) throws IOException {
+        File[] setDirectories = inputDirectory.listFiles();
+        Arrays.sort(setDirectories);
+
+        for (File setDirectory : setDirectories) {
+            if (setDirectory.isDirectory()) {
+                List<File> files = new ArrayList<File>();
+                findClassDescriptions(setDirectory, files);
+
+                for (File file : files) {
+                    add(readClassDescription(file), setDirectory.getName(), getFileName(setDirectory, file));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns path of the file relative to the set directory,
+     * named as the equivalent serialized .dat file,
+     * e.g. ActiveRecord/Base/Base.dat
+     */
+    static String getFileName(File setDirectory, File file) {
+        String name = file.getPath().substring(setDirectory.getPath().length() + 1);
+        name = name.replace(File.separatorChar, '/');
+        if (name.endsWith(".xml")) {
+            name = name.substring(0, name.length() - ".xml".length()) + ".dat";
+        }
+        return name;
+    }
+
+    static void findClassDescriptions(File directory, List<File> list) {
+        File[] entries = directory.listFiles();
+        Arrays.sort(entries);
+
+        for (File entry : entries) {
+            if (entry.isDirectory()) {
+                findClassDescriptions(entry, list);
+            } else if (entry.getName().endsWith(".xml") || entry.getName().endsWith(".dat")) {
+                list.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Reads a class description from either a java-xml
+     * or a serialized .dat file.
+     */
+    static ClassDescription readClassDescription(File file) throws IOException {
+        InputStream stream = new BufferedInputStream(new FileInputStream(file));
+
+        try {
+            if (file.getName().endsWith(".xml")) {
+                XMLDecoder decoder = new XMLDecoder(stream);
+                try {
+                    return (ClassDescription)decoder.readObject();
+                } finally {
+                    decoder.close();
+                }
+            } else {
+                ObjectInputStream input = new ObjectInputStream(stream);
+                try {
+                    return (ClassDescription)input.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e.getMessage());
+                } finally {
+                    input.close();
+                }
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new RuntimeException("required args: inputPath resultPath");
+        } else {
+            File resultDirectory = new File(args[1]);
+            if (!resultDirectory.exists()) {
+                resultDirectory.mkdirs();
+            }
+            RDocIndexWriter writer = new RDocIndexWriter();
+            writer.addDirectory(new File(args[0]));
+            writer.write(new File(resultDirectory, RDocIndex.INDEX_FILE), new File(resultDirectory, RDocIndex.DOCS_FILE));
+            System.out.println(writer.classCount + " classes, " + writer.strings.size() + " strings, " + writer.docs.size() + " bytes of documentation");
+        }
+    }
+}
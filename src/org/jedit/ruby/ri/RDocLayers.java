@@ -0,0 +1,141 @@
+/*
+ * RDocLayers.java - Documentation sets loaded into the RubyCache
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.ri;
+
+import org.gjt.sp.jedit.jEdit;
+
+import java.util.*;
+
+/**
+ * Keeps track of the documentation set layers loaded into the
+ * {@link org.jedit.ruby.cache.RubyCache} and the cache paths
+ * of the classes each layer added, so a layer can be removed
+ * without resetting the cache.
+ * <p/>
+ * The Rails packages of the rails_2_3_2 and rails_2_0_2 sets are
+ * layers of their own, that can be included or excluded in the
+ * {@link RDocViewer}. Other classes are in a layer named after
+ * their documentation set. Sets converted from the user's RDoc
+ * directories are in layers prefixed with {@link #USER_LAYER_PREFIX}.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+final class RDocLayers {
+
+    static final String USER_LAYER_PREFIX = "user:";
+
+    private static final String RAILS_2_3_2 = "rails_2_3_2";
+    private static final String RAILS_2_0_2 = "rails_2_0_2";
+    private static final String[] RAILS_LAYERS = new String[]{RAILS_2_3_2, RAILS_2_0_2};
+    private static final String[] RAILS_PACKAGES = new String[]{"/Action", "/Active", "/Hpricot"};
+
+    private final Map<String, List<String>> layerToPaths = new HashMap<String, List<String>>();
+    private boolean indexed;
+
+    /**
+     * @return layer a class from the supplied documentation set file belongs to
+     */
+    static String getLayer(String set, String fileName) {
+        String path = set + '/' + fileName;
+        for (String layer : RAILS_LAYERS) {
+            for (String railsPackage : RAILS_PACKAGES) {
+                if (path.indexOf(layer + railsPackage) != -1) {
+                    return layer;
+                }
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @return sorted names of the layers excluded in the {@link RDocViewer}
+     */
+    static SortedSet<String> getExcludedLayers() {
+        SortedSet<String> excludedLayers = new TreeSet<String>();
+        if (!jEdit.getBooleanProperty(RDocViewer.INCLUDE_RAILS, true)) {
+            excludedLayers.add(RAILS_2_3_2);
+        }
+        if (!jEdit.getBooleanProperty(RDocViewer.INCLUDE_RAILS_2_0, false)) {
+            excludedLayers.add(RAILS_2_0_2);
+        }
+        return excludedLayers;
+    }
+
+    /**
+     * @return patterns matching jar entry names of classes in the excluded layers
+     */
+    static List<String> getExcludePatterns(Set<String> excludedLayers) {
+        List<String> excludePatterns = new ArrayList<String>();
+        for (String layer : excludedLayers) {
+            for (String railsPackage : RAILS_PACKAGES) {
+                excludePatterns.add(layer + railsPackage);
+            }
+        }
+        return excludePatterns;
+    }
+
+    /**
+     * @return true if any Rails layer is neither loaded nor excluded
+     */
+    final synchronized boolean isRailsLayerMissing(Set<String> excludedLayers) {
+        for (String layer : RAILS_LAYERS) {
+            if (!excludedLayers.contains(layer) && !layerToPaths.containsKey(layer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the RDoc was loaded from an {@link RDocIndex},
+     * so that layers can be added from the index
+     */
+    final synchronized boolean isIndexed() {
+        return indexed;
+    }
+
+    final synchronized void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    final synchronized List<String> getLoadedLayers() {
+        return new ArrayList<String>(layerToPaths.keySet());
+    }
+
+    /**
+     * Records that a class was added to the cache with the given path.
+     */
+    final synchronized void add(String layer, String path) {
+        List<String> paths = layerToPaths.get(layer);
+        if (paths == null) {
+            paths = new ArrayList<String>();
+            layerToPaths.put(layer, paths);
+        }
+        paths.add(path);
+    }
+
+    /**
+     * @return cache paths of the classes of the removed layer
+     */
+    final synchronized List<String> remove(String layer) {
+        List<String> paths = layerToPaths.remove(layer);
+        return paths == null ? new ArrayList<String>() : paths;
+    }
+}
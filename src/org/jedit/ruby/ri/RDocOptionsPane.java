@@ -128,6 +128,7 @@ public final class RDocOptionsPane extends AbstractOptionPane {
             }
 
             RubyPlugin.log(log, getClass());
+            RiParser.updateRdocLayers();
         } catch (Exception e) {
             e.printStackTrace();
             RubyPlugin.error(e, getClass());
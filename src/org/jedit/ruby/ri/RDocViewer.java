@@ -73,6 +73,28 @@ public final class RDocViewer extends JPanel
 
         viewers.put(this, null);
         setListData(RubyCache.instance().getAllImmediateMembers());
+        if (RiParser.isLoading()) {
+            documentationPane.setText(jEdit.getProperty("ruby.rdoc-viewer.loading.label"));
+        }
+    }
+
+    /**
+     * Called by {@link RiParser} once RDoc has finished
+     * loading in the background.
+     */
+    public static void documentationLoaded() {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                for (RDocViewer viewer : viewers.keySet()) {
+                    viewer.setListData(RubyCache.instance().getAllImmediateMembers());
+                    if (viewer.searchField.getText().length() > 0) {
+                        viewer.handleSearchTermEntered();
+                    } else {
+                        viewer.documentationPane.setText("");
+                    }
+                }
+            }
+        });
     }
 
     private JPanel initRailsPanel() {
@@ -91,20 +113,13 @@ public final class RDocViewer extends JPanel
         radio.setActionCommand(actionCommand);
         radio.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                try {
-                    view.showWaitCursor();
-                    Enumeration<AbstractButton> buttons = buttonGroup.getElements();
-                    while (buttons.hasMoreElements()) {
-                        AbstractButton button = buttons.nextElement();
-                        jEdit.setBooleanProperty(button.getActionCommand(), button.isSelected());
-                    }
-                    RiParser.parseRdoc();
-                    List<Member> members = RubyCache.instance().getAllImmediateMembers();
-                    setListData(members);
-                } finally {
-                    view.hideWaitCursor();
-                    documentationPane.setText(jEdit.getProperty(""));
+                Enumeration<AbstractButton> buttons = buttonGroup.getElements();
+                while (buttons.hasMoreElements()) {
+                    AbstractButton button = buttons.nextElement();
+                    jEdit.setBooleanProperty(button.getActionCommand(), button.isSelected());
                 }
+                RiParser.updateRdocLayers();
+                documentationPane.setText(jEdit.getProperty("ruby.rdoc-viewer.loading.label"));
             }
         });
         panel.add(radio);
@@ -23,43 +23,285 @@ import org.jedit.ruby.ast.*;
 import org.jedit.ruby.RubyPlugin;
 import org.jedit.ruby.utils.CommandUtils;
 import org.jedit.ruby.cache.RubyCache;
+import org.jedit.ruby.cache.RubyCacheSnapshot;
 import org.gjt.sp.jedit.jEdit;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
+import java.util.jar.JarFile;
+import java.util.zip.Adler32;
 
 /**
  * @author robmckinnon at users.sourceforge.net
  */
 public final class RiParser {
 
-    public static void parseRdoc() {
+    private static final String RDOC_DIRECTORY = "ri/rdoc/";
+    private static final String SNAPSHOT_FILE = "rdoc.snapshot";
+    private static final String USER_RDOC_DIRECTORY = "java-xml";
+    private static final int PUBLISH_CHUNK_SIZE = 250;
+
+    private static Loader loader;
+    private static RDocLayers layers;
+
+    /**
+     * Resets the {@link RubyCache} and starts loading RDoc from
+     * the plugin jar in the background. Classes are published to
+     * the cache as they are decoded, {@link #PUBLISH_CHUNK_SIZE} at
+     * a time; {@link RubyCache#isPopulated()} returns true once
+     * loading has finished.
+     */
+    public static synchronized void parseRdoc() {
+        if (loader != null) {
+            loader.cancel();
+        }
         RubyCache.resetCache();
+        layers = new RDocLayers();
+        loader = new Loader(RubyCache.instance(), layers, true);
+        loader.start();
+    }
+
+    /**
+     * Cancels RDoc loading, if running, e.g. when the plugin is stopped.
+     */
+    public static synchronized void stop() {
+        if (loader != null) {
+            loader.cancel();
+            loader = null;
+        }
+    }
+
+    /**
+     * Adds and removes documentation set layers in the background
+     * to match the Rails settings and the user's converted RDoc,
+     * without resetting the {@link RubyCache}. All RDoc is reloaded
+     * if it is still loading or wasn't loaded from an {@link RDocIndex}.
+     */
+    public static synchronized void updateRdocLayers() {
+        if (isLoading() || layers == null || !layers.isIndexed()) {
+            parseRdoc();
+        } else {
+            loader = new Loader(RubyCache.instance(), layers, false);
+            loader.start();
+        }
+    }
+
+    /**
+     * Returns true while RDoc is being loaded into the {@link RubyCache}.
+     */
+    public static synchronized boolean isLoading() {
+        return loader != null && loader.isAlive();
+    }
+
+    private static void loadRdoc(RubyCache cache, RDocLayers layers, ExecutorService workers, AtomicInteger cachedClassCount) throws InterruptedException {
         copyOverRubyCode();
-        log("parsing RDoc from jar");
-        List<JarEntry> entries = getEntries();
-        for (JarEntry entry : entries) {
-            loadClassDesciption(entry);
+        SortedSet<String> excludedLayers = RDocLayers.getExcludedLayers();
+        InputStream index = getResource(RDOC_DIRECTORY + RDocIndex.INDEX_FILE);
+        InputStream docs = getResource(RDOC_DIRECTORY + RDocIndex.DOCS_FILE);
+
+        RubyCacheSnapshot snapshot = null;
+
+        if (index != null && docs != null) {
+            log("parsing RDoc index from jar");
+            List<ClassMember> classes = new ArrayList<ClassMember>();
+            String checksum = loadIndex(index, docs, cache, layers, excludedLayers, classes, cachedClassCount);
+            if (checksum != null) {
+                File file = CommandUtils.getStoragePath(SNAPSHOT_FILE);
+                snapshot = new RubyCacheSnapshot(file, checksum + excludedLayers, classes);
+                layers.setIndexed(true);
+            }
+        } else {
+            close(index);
+            close(docs);
+            log("parsing RDoc from jar");
+            List<JarEntry> entries = getEntries(RDocLayers.getExcludePatterns(excludedLayers));
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(entries.size());
+            for (JarEntry entry : entries) {
+                tasks.add(new LoadTask(entry, cache, cachedClassCount));
+            }
+            workers.invokeAll(tasks);
+        }
+
+        if (snapshot == null) {
+            cache.populateSuperClassMethods();
+        } else {
+            if (snapshot.read()) {
+                log("restoring RDoc cache snapshot");
+            }
+            cache.populateSuperClassMethods(snapshot);
+        }
+
+        List<ClassMember> userClasses = new ArrayList<ClassMember>();
+        loadUserLayers(cache, layers, userClasses, cachedClassCount);
+        if (!userClasses.isEmpty()) {
+            cache.populateAddedClasses(userClasses);
+        }
+    }
+
+    /**
+     * Removes layers that have been excluded or deleted and
+     * adds layers that are now included, populating only the
+     * classes added.
+     */
+    private static void updateLayers(RubyCache cache, RDocLayers layers, AtomicInteger cachedClassCount) {
+        SortedSet<String> excludedLayers = RDocLayers.getExcludedLayers();
+        Set<String> userLayers = new HashSet<String>();
+        for (File directory : getUserSetDirectories()) {
+            userLayers.add(RDocLayers.USER_LAYER_PREFIX + directory.getName());
+        }
+
+        for (String layer : layers.getLoadedLayers()) {
+            boolean deleted = layer.startsWith(RDocLayers.USER_LAYER_PREFIX) && !userLayers.contains(layer);
+            if (excludedLayers.contains(layer) || deleted) {
+                log("removing RDoc layer: " + layer);
+                for (String path : layers.remove(layer)) {
+                    cache.removeMembers(path);
+                }
+            }
+        }
+
+        List<ClassMember> classes = new ArrayList<ClassMember>();
+        if (layers.isRailsLayerMissing(excludedLayers)) {
+            InputStream index = getResource(RDOC_DIRECTORY + RDocIndex.INDEX_FILE);
+            InputStream docs = getResource(RDOC_DIRECTORY + RDocIndex.DOCS_FILE);
+            loadIndex(index, docs, cache, layers, excludedLayers, classes, cachedClassCount);
+        }
+        loadUserLayers(cache, layers, classes, cachedClassCount);
+        cache.populateAddedClasses(classes);
+    }
+
+    /**
+     * Loads classes from the single RDoc index in one sequential pass,
+     * used in preference to the per class .dat files when present.
+     * Only classes of layers that are neither excluded nor already
+     * loaded are added to the cache. Documentation comments are left
+     * in a memory mapped file and only read when displayed, unless
+     * the file can't be mapped.
+     *
+     * @param classes list classes added to the cache are appended to
+     * @return checksum of the index, or null if index couldn't be read
+     */
+    private static String loadIndex(InputStream index, InputStream docs, final RubyCache cache, final RDocLayers layers,
+                                    final Set<String> excludedLayers, final List<ClassMember> classes,
+                                    final AtomicInteger cachedClassCount) {
+        final List<String> loadedLayers = layers.getLoadedLayers();
+        try {
+            byte[] indexBytes = RDocIndex.readFully(index);
+            Adler32 adler = new Adler32();
+            adler.update(indexBytes, 0, indexBytes.length);
+            String checksum = Long.toHexString(adler.getValue());
+
+            final DocumentationSource documentation = mapDocumentation(docs, checksum);
+            byte[] docBytes = null;
+            if (documentation == null) {
+                docBytes = RDocIndex.readFully(getResource(RDOC_DIRECTORY + RDocIndex.DOCS_FILE));
+            }
+            final RDocIndex rdocIndex = new RDocIndex(new ByteArrayInputStream(indexBytes), docBytes);
+
+            int count = rdocIndex.read(new RDocIndex.Handler() {
+                public void handleClass(ClassDescription description, String set, String fileName) {
+                    String layer = RDocLayers.getLayer(set, fileName);
+                    if (!excludedLayers.contains(layer) && !loadedLayers.contains(layer)) {
+                        String path = set + '/' + fileName;
+                        classes.add(cache(description, path, cache, rdocIndex, documentation, cachedClassCount));
+                        layers.add(layer, path);
+                    }
+                }
+            });
+            log("parsed RDoc index: " + count + " classes");
+            return checksum;
+        } catch (IOException e) {
+            RubyPlugin.error(e, RiParser.class);
+            return null;
+        }
+    }
+
+    /**
+     * Maps the copy of the documentation file made for the index
+     * with the given checksum, as offsets into the documentation
+     * are only valid for the index written with it. Copies made
+     * for other indexes are deleted.
+     */
+    private static DocumentationSource mapDocumentation(InputStream docs, String checksum) {
+        try {
+            File file = CommandUtils.getStoragePath(RDocIndex.DOCS_FILE + '.' + checksum);
+            deleteOtherCopies(file);
+            return MappedDocumentation.map(docs, file);
+        } catch (IOException e) {
+            RubyPlugin.error(e, RiParser.class);
+            return null;
+        }
+    }
+
+    private static void deleteOtherCopies(File file) {
+        File[] files = file.getParentFile().listFiles();
+        if (files != null) {
+            for (File other : files) {
+                if (other.getName().startsWith(RDocIndex.DOCS_FILE) && !other.equals(file)) {
+                    other.delete();
+                }
+            }
         }
-        RubyCache.instance().populateSuperClassMethods();
     }
 
-    private static List<String> getRDocExcludePatterns() {
-        List<String> excludePatterns = new ArrayList<String>();
-        if (!jEdit.getBooleanProperty(RDocViewer.INCLUDE_RAILS, true)) {
-            excludePatterns.add("rails_2_3_2/Action");
-            excludePatterns.add("rails_2_3_2/Active");
-            excludePatterns.add("rails_2_3_2/Hpricot");
+    private static InputStream getResource(String name) {
+        return RubyPlugin.class.getClassLoader().getResourceAsStream(name);
+    }
+
+    private static void close(InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                RubyPlugin.error(e, RiParser.class);
+            }
         }
-        if (!jEdit.getBooleanProperty(RDocViewer.INCLUDE_RAILS_2_0, false)) {
-            excludePatterns.add("rails_2_0_2/Action");
-            excludePatterns.add("rails_2_0_2/Active");
-            excludePatterns.add("rails_2_0_2/Hpricot");
+    }
+
+    /**
+     * Loads class descriptions the user has converted from their own
+     * RDoc directories, one layer per directory, unless already loaded.
+     */
+    private static void loadUserLayers(RubyCache cache, RDocLayers layers, List<ClassMember> classes, AtomicInteger cachedClassCount) {
+        List<String> loadedLayers = layers.getLoadedLayers();
+
+        for (File directory : getUserSetDirectories()) {
+            String layer = RDocLayers.USER_LAYER_PREFIX + directory.getName();
+            if (!loadedLayers.contains(layer)) {
+                log("loading RDoc layer: " + layer);
+                List<File> files = new ArrayList<File>();
+                RDocIndexWriter.findClassDescriptions(directory, files);
+
+                for (File file : files) {
+                    try {
+                        String path = layer + '/' + RDocIndexWriter.getFileName(directory, file);
+                        classes.add(cache(RDocIndexWriter.readClassDescription(file), path, cache, null, null, cachedClassCount));
+                        layers.add(layer, path);
+                    } catch (IOException e) {
+                        RubyPlugin.error(e, RiParser.class);
+                    }
+                }
+            }
+        }
+    }
+
+    private static File[] getUserSetDirectories() {
+        File[] files = CommandUtils.getStoragePath(USER_RDOC_DIRECTORY).listFiles();
+        List<File> directories = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    directories.add(file);
+                }
+            }
         }
-        return excludePatterns;
+        return directories.toArray(new File[directories.size()]);
     }
 
     private static void copyOverRubyCode() {
@@ -88,15 +330,15 @@ public final class RiParser {
         }
     }
 
-    private static void loadClassDesciption(JarEntry entry) {
+    private static void loadClassDesciption(JarEntry entry, RubyCache cache, AtomicInteger cachedClassCount) {
         String name = entry.getName();
-        InputStream inputStream = RubyPlugin.class.getClassLoader().getResourceAsStream(name);
+        InputStream inputStream = getResource(name);
         ObjectInputStream input = null;
         try {
             input = new ObjectInputStream(inputStream);
             ClassDescription result = (ClassDescription)input.readObject();
             String path = name.substring(name.lastIndexOf("/") + 1);
-            cache(result, path);
+            cache(result, path, cache, null, null, cachedClassCount);
         } catch (Exception e) {
             RubyPlugin.error(e, RiParser.class);
         } finally {
@@ -110,17 +352,21 @@ public final class RiParser {
         }
     }
 
-    private static List<JarEntry> getEntries() {
+    private static List<JarEntry> getEntries(List<String> rdocExcludePatterns) {
         List<JarEntry> entries = new ArrayList<JarEntry>();
         try {
-            List<String> rdocExcludePatterns = getRDocExcludePatterns();
-            JarInputStream jar = new JarInputStream(new FileInputStream(getJarFile()));
-            JarEntry entry;
-            while ((entry = jar.getNextJarEntry()) != null) {
-                boolean includeEntry = !excludeEntry(rdocExcludePatterns, entry);
-                if (includeEntry) {
-                    entries.add(entry);
+            JarFile jar = new JarFile(getJarFile());
+            try {
+                Enumeration<JarEntry> jarEntries = jar.entries();
+                while (jarEntries.hasMoreElements()) {
+                    JarEntry entry = jarEntries.nextElement();
+                    boolean includeEntry = !excludeEntry(rdocExcludePatterns, entry);
+                    if (includeEntry) {
+                        entries.add(entry);
+                    }
                 }
+            } finally {
+                jar.close();
             }
         } catch (IOException e) {
             RubyPlugin.error(e, RiParser.class);
@@ -130,16 +376,16 @@ public final class RiParser {
 
     private static boolean excludeEntry(List<String> rdocExcludePatterns, JarEntry entry) {
         boolean exclude = entry.isDirectory() || !entry.getName().endsWith(".dat");
+        return exclude || isExcluded(rdocExcludePatterns, entry.getName());
+    }
 
-        if (!exclude) {
-            for (String excludePattern : rdocExcludePatterns) {
-                if (entry.getName().indexOf(excludePattern) != -1) {
-                    exclude = true;
-                    break;
-                }
+    private static boolean isExcluded(List<String> rdocExcludePatterns, String name) {
+        for (String excludePattern : rdocExcludePatterns) {
+            if (name.indexOf(excludePattern) != -1) {
+                return true;
             }
         }
-        return exclude;
+        return false;
     }
 
     private static File getJarFile() {
@@ -156,7 +402,12 @@ public final class RiParser {
         return new File(dir, "RubyPlugin.jar");
     }
 
-    private static void cache(ClassDescription description, String path) {
+    /**
+     * Adds class to the cache, publishing the cache each time the
+     * loader has cached another {@link #PUBLISH_CHUNK_SIZE} classes.
+     */
+    private static ClassMember cache(ClassDescription description, String path, RubyCache cache, RDocIndex index,
+                                     DocumentationSource documentation, AtomicInteger cachedClassCount) {
         ClassMember parent = new ClassMember(description.getName());
         parent.setSuperClassName(description.getSuperclass());
         parent.setEndOffset(0);
@@ -165,14 +416,31 @@ public final class RiParser {
             namespace += "::";
         }
         parent.setNamespace(namespace);
-        parent.setDocumentationComment(description.getComment());
+        if (description.getIncludes() != null) {
+            for (IncludedModule include : description.getIncludes()) {
+                parent.addIncludedModuleName(include.getName());
+            }
+        }
+        setDocumentation(parent, description, index, documentation);
 
-        addMethods(description.getInstanceMethods(), parent);
-        addMethods(description.getClassMethods(), parent);
-        RubyCache.instance().addClass(parent, path);
+        addMethods(description.getInstanceMethods(), parent, index, documentation);
+        addMethods(description.getClassMethods(), parent, index, documentation);
+        cache.addClass(parent, path);
+        if (cachedClassCount.incrementAndGet() % PUBLISH_CHUNK_SIZE == 0) {
+            cache.publishUpdate();
+        }
+        return parent;
+    }
+
+    private static void setDocumentation(Member member, Description description, RDocIndex index, DocumentationSource documentation) {
+        if (documentation == null) {
+            member.setDocumentationComment(description.getComment());
+        } else {
+            member.setDocumentationComment(documentation, index.getCommentOffset(description), index.getCommentLength(description));
+        }
     }
 
-    private static void addMethods(List<MethodDescription> methods, ClassMember parent) {
+    private static void addMethods(List<MethodDescription> methods, ClassMember parent, RDocIndex index, DocumentationSource documentation) {
         for (MethodDescription methodDescription : methods) {
             String name = methodDescription.getName();
             name = name.startsWith(".") ? name.substring(1) : name;
@@ -180,7 +448,7 @@ public final class RiParser {
             method.setNamespace(methodDescription.getNamespace());
             method.setDocumentationBlockParams(methodDescription.getBlockParameters());
             method.setDocumentationParams(methodDescription.getParameters());
-            method.setDocumentationComment(methodDescription.getComment());
+            setDocumentation(method, methodDescription, index, documentation);
             method.setParentMemberName(parent.getName());
             method.setParentMember(null);
             method.setReceiver("", null);
@@ -193,6 +461,82 @@ public final class RiParser {
         RubyPlugin.log(message, RiParser.class);
     }
 
+    /**
+     * Loads all RDoc, decoding any RDoc jar entries on a pool of
+     * worker threads bounded by the number of available processors,
+     * or updates the loaded layers.
+     */
+    private static final class Loader extends Thread {
+        private final RubyCache cache;
+        private final RDocLayers layers;
+        private final boolean loadAll;
+        private final ExecutorService workers;
+        private final AtomicInteger cachedClassCount = new AtomicInteger();
+
+        Loader(RubyCache cache, RDocLayers layers, boolean loadAll) {
+            super("RubyPlugin RDoc loader");
+            setDaemon(true);
+            setPriority(Thread.MIN_PRIORITY);
+            setContextClassLoader(RiParser.class.getClassLoader());
+            this.cache = cache;
+            this.layers = layers;
+            this.loadAll = loadAll;
+            int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "RubyPlugin RDoc worker");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+
+        public final void run() {
+            cache.beginUpdate();
+            try {
+                if (loadAll) {
+                    loadRdoc(cache, layers, workers, cachedClassCount);
+                } else {
+                    updateLayers(cache, layers, cachedClassCount);
+                }
+            } catch (InterruptedException e) {
+                log("RDoc loading cancelled");
+                interrupt();
+            } finally {
+                workers.shutdown();
+                cache.endUpdate();
+            }
+            if (!isInterrupted()) {
+                RDocViewer.documentationLoaded();
+            }
+        }
+
+        final void cancel() {
+            workers.shutdownNow();
+            interrupt();
+        }
+    }
+
+    private static final class LoadTask implements Callable<Object> {
+        private final JarEntry entry;
+        private final RubyCache cache;
+        private final AtomicInteger cachedClassCount;
+
+        LoadTask(JarEntry entry, RubyCache cache, AtomicInteger cachedClassCount) {
+            this.entry = entry;
+            this.cache = cache;
+            this.cachedClassCount = cachedClassCount;
+        }
+
+        public final Object call() {
+            if (!Thread.currentThread().isInterrupted()) {
+                loadClassDesciption(entry, cache, cachedClassCount);
+            }
+            return null;
+        }
+    }
+
     public static void parse() {
         ClassDescription description = new ClassDescription();
         description.setAttributes(new ArrayList<Attribute>());
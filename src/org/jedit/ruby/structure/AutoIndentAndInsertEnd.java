@@ -310,91 +310,56 @@ public final class AutoIndentAndInsertEnd {
     }
 
     private boolean endsNotBalanced() {
-        String line;
-        int count = area.getLineCount();
-        int balancedCount = 0;
-//        StringBuffer buffer = new StringBuffer("");
-        boolean isString = false;
-
-        for (int i = 0; i < count; i++) {
-            line = area.getLineText(i).trim();
-            if (hasEndKeyword(line)) {
-                int endCount = getEndCount(line);
-                while (endCount != 0) {
-                    balancedCount--;
-//                    buffer.append(balancedCount).append("");
-//                    for (int j = 0; j < balancedCount; buffer.append(j++ > -1 ? "    " : ""));
-//                    buffer.append(line).append("\n");
-                    endCount--;
+        int balancedCount = EndBalanceIndex.instance(area.getBuffer()).getBalance();
+        boolean endsNotBalanced = balancedCount < 0;
+        RubyPlugin.log("Ends " + (endsNotBalanced ? "not " : "") + "balanced: " + balancedCount, AutoIndentAndInsertEnd.class);
+        return endsNotBalanced;
+    }
+
+    /**
+     * Returns the number of blocks opened by a trimmed
+     * line, that each need an <code>end</code>.
+     */
+    public static int getOpenCount(String line) {
+        int openCount = 0;
+        boolean isDoStatement = DoRegExp.instance.isMatch(line) && !isDoInComment(line);
+        boolean ignore = IgnoreRegExp.instance.isMatch(line);
+        boolean conditionalAssignment = TrailingConditionRegExp.instance.isMatch(line);
+
+        if (conditionalAssignment || (!ignore && (isDoStatement || MatchRegExp.instance.isMatch(line)))) {
+            boolean openingBrace = line.indexOf("{") != -1 && line.indexOf("}") == -1;
+            boolean elsif = line.indexOf("elsif") != -1;
+            if (!openingBrace && !elsif) {
+                openCount++;
+
+                int moduleIndex = line.indexOf("module");
+                while(moduleIndex != -1) {
+                    moduleIndex = line.indexOf("module", moduleIndex+5);
+                    if(moduleIndex != -1) {
+                        openCount++;
+                    }
                 }
-            }
-            if (line.indexOf("<<-EOF") != -1) {
-                isString = true;
-            } else if (line.indexOf("EOF") != -1) {
-                isString = false;
-            }
-            if (!isString) {
-                boolean isDoMatch = DoRegExp.instance.isMatch(line);
-                boolean doInComment = isDoInComment(line);
-//                if(line.indexOf("File.open") != -1) {
-//                    buffer.append("do: ").append(isDoMatch).append(", in comment: ").append(doInComment).append(',').append(line).append('\n');
-//                }
-                boolean isDoStatement = isDoMatch && !doInComment;
-                boolean ignore = IgnoreRegExp.instance.isMatch(line);
-                boolean conditionalAssignment = TrailingConditionRegExp.instance.isMatch(line);
-
-                if (conditionalAssignment || (!ignore && (isDoStatement || MatchRegExp.instance.isMatch(line)))) {
-                    boolean openingBrace = line.indexOf("{") != -1 && line.indexOf("}") == -1;
-                    boolean elsif = line.indexOf("elsif") != -1;
-                    if (!openingBrace && !elsif) {
-                        balancedCount++;
-//                        buffer.append(balancedCount).append("");
-//                        for (int j = 0; j < balancedCount; buffer.append(j++ > -1 ? "    " : ""));
-//                        buffer.append(line).append("\n");
-
-                        int moduleIndex = line.indexOf("module");
-                        while(moduleIndex != -1) {
-                            moduleIndex = line.indexOf("module", moduleIndex+5);
-                            if(moduleIndex != -1) {
-                                balancedCount++;
-//                                buffer.append(balancedCount).append("");
-//                                for (int j = 0; j < balancedCount; buffer.append(j++ > -1 ? "    " : ""));
-//                                buffer.append(line).append("\n");
-                            }
-                        }
 
-                        moduleIndex = line.indexOf("module");
+                moduleIndex = line.indexOf("module");
 
-                        if(moduleIndex != -1) {
-                            int classIndex = line.indexOf("class", moduleIndex+5);
-                            if(classIndex != -1) {
-                                balancedCount++;
-                            }
-                        }
+                if(moduleIndex != -1) {
+                    int classIndex = line.indexOf("class", moduleIndex+5);
+                    if(classIndex != -1) {
+                        openCount++;
+                    }
+                }
 
-                        int classIndex = line.indexOf("class");
-//                        buffer.append("balance: ").append(balancedCount).append("\n");
-//                        buffer.append("classIndex: ").append(classIndex).append("\n");
-                        if (classIndex != -1) {
-                            int defIndex = line.indexOf("def", classIndex+4);
-//                            buffer.append("defIndex: ").append(defIndex).append("\n");
-                            while(defIndex != -1) {
-                                balancedCount++;
-//                                buffer.append(balancedCount).append("");
-//                                for (int j = 0; j < balancedCount; buffer.append(j++ > -1 ? "    " : ""));
-//                                buffer.append(line).append("\n");
-                                defIndex = line.indexOf("def", defIndex+2);
-                            }
-                        }
+                int classIndex = line.indexOf("class");
+                if (classIndex != -1) {
+                    int defIndex = line.indexOf("def", classIndex+4);
+                    while(defIndex != -1) {
+                        openCount++;
+                        defIndex = line.indexOf("def", defIndex+2);
                     }
                 }
             }
         }
-
-//        RubyPlugin.log(buffer.toString(), AutoIndentAndInsertEnd.class);
-        boolean endsNotBalanced = balancedCount < 0;
-        RubyPlugin.log("Ends " + (endsNotBalanced ? "not " : "") + "balanced: " + balancedCount, AutoIndentAndInsertEnd.class);
-        return endsNotBalanced;
+        return openCount;
     }
 
     public static int getEndCount(String line) {
@@ -26,6 +26,8 @@ import org.gjt.sp.jedit.View;
 import org.gjt.sp.jedit.jEdit;
 import org.gjt.sp.jedit.textarea.JEditTextArea;
 import org.jedit.ruby.RubyPlugin;
+import org.jedit.ruby.parser.ParseService;
+import org.jedit.ruby.parser.RubyParser;
 import org.jedit.ruby.utils.EditorView;
 
 import java.util.*;
@@ -66,6 +68,11 @@ public class BufferChangeHandler extends BufferAdapter {
     }
 
     public void contentInserted(Buffer buffer, int startLine, int offset, int numLines, int length) {
+        if (RubyPlugin.isRuby(buffer)) {
+            RubyParser.textInserted(buffer.getPath(), offset, length);
+            ParseService.instance().textInserted(buffer, offset, length);
+        }
+
         if (numLines > 0) {
             Map<Integer, Edit> lineEdits = getLineEdits(buffer.getPath());
             Collection<Edit> edits = new ArrayList<Edit>(lineEdits.values());
@@ -87,6 +94,11 @@ public class BufferChangeHandler extends BufferAdapter {
     }
 
     public void contentRemoved(Buffer buffer, int startLine, int offset, int numLines, int length) {
+        if (RubyPlugin.isRuby(buffer)) {
+            RubyParser.textRemoved(buffer.getPath(), offset, length);
+            ParseService.instance().textRemoved(buffer, offset, length);
+        }
+
         if (numLines > 0) {
             Map<Integer, Edit> lineEdits = getLineEdits(buffer.getPath());
 
@@ -0,0 +1,197 @@
+/*
+ * EndBalanceIndex.java - Balance of block openings and ends in a buffer
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.structure;
+
+import org.gjt.sp.jedit.buffer.BufferAdapter;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Counts of the blocks each line of a buffer opens and the
+ * <code>end</code>s it closes them with, kept as the buffer is
+ * edited. Only lines that are new or edited since the balance was
+ * last asked for are matched against the auto indent expressions;
+ * the balance is then a sum of the counts.
+ * <p/>
+ * Lines within a <code>&lt;&lt;-EOF</code> here document don't
+ * open blocks, but their ends are counted, as when
+ * {@link AutoIndentAndInsertEnd} scanned the whole buffer.
+ * <p/>
+ * Indexes are held in a {@link WeakHashMap} keyed by buffer, so an
+ * index only refers to its buffer weakly.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class EndBalanceIndex extends BufferAdapter {
+
+    private static final byte HEREDOC_UNCHANGED = 0;
+    private static final byte HEREDOC_START = 1;
+    private static final byte HEREDOC_END = 2;
+
+    private static final Map<JEditBuffer, EndBalanceIndex> bufferToIndex = new WeakHashMap<JEditBuffer, EndBalanceIndex>();
+
+    private final WeakReference<JEditBuffer> bufferReference;
+    private int lineCount;
+    private boolean[] counted;
+    private int[] openCounts;
+    private int[] endCounts;
+    private byte[] heredocs;
+
+    private EndBalanceIndex(JEditBuffer buffer) {
+        bufferReference = new WeakReference<JEditBuffer>(buffer);
+        reset(buffer);
+    }
+
+    /**
+     * Returns the buffer's index, creating it and listening
+     * to the buffer's edits if it hasn't one.
+     */
+    public static synchronized EndBalanceIndex instance(JEditBuffer buffer) {
+        EndBalanceIndex index = bufferToIndex.get(buffer);
+        if (index == null) {
+            index = new EndBalanceIndex(buffer);
+            buffer.addBufferListener(index);
+            bufferToIndex.put(buffer, index);
+        }
+        return index;
+    }
+
+    public static synchronized void bufferClosed(JEditBuffer buffer) {
+        EndBalanceIndex index = bufferToIndex.remove(buffer);
+        if (index != null) {
+            buffer.removeBufferListener(index);
+        }
+    }
+
+    /**
+     * @return number of blocks opened less the number of ends,
+     * negative if there are more ends than blocks
+     */
+    public synchronized int getBalance() {
+        JEditBuffer buffer = bufferReference.get();
+        if (lineCount != buffer.getLineCount()) {
+            reset(buffer);
+        }
+        int balance = 0;
+        boolean inHeredoc = false;
+
+        for (int line = 0; line < lineCount; line++) {
+            if (!counted[line]) {
+                count(buffer, line);
+            }
+            balance -= endCounts[line];
+            if (heredocs[line] == HEREDOC_START) {
+                inHeredoc = true;
+            } else if (heredocs[line] == HEREDOC_END) {
+                inHeredoc = false;
+            }
+            if (!inHeredoc) {
+                balance += openCounts[line];
+            }
+        }
+        return balance;
+    }
+
+    private void count(JEditBuffer buffer, int line) {
+        String text = buffer.getLineText(line).trim();
+        endCounts[line] = AutoIndentAndInsertEnd.hasEndKeyword(text) ? AutoIndentAndInsertEnd.getEndCount(text) : 0;
+        openCounts[line] = AutoIndentAndInsertEnd.getOpenCount(text);
+
+        if (text.indexOf("<<-EOF") != -1) {
+            heredocs[line] = HEREDOC_START;
+        } else if (text.indexOf("EOF") != -1) {
+            heredocs[line] = HEREDOC_END;
+        } else {
+            heredocs[line] = HEREDOC_UNCHANGED;
+        }
+        counted[line] = true;
+    }
+
+    private void reset(JEditBuffer buffer) {
+        lineCount = buffer.getLineCount();
+        int capacity = Math.max(16, lineCount * 2);
+        counted = new boolean[capacity];
+        openCounts = new int[capacity];
+        endCounts = new int[capacity];
+        heredocs = new byte[capacity];
+    }
+
+    /**
+     * Lines after the first line inserted into move down, and the
+     * first line and inserted lines are counted again when next
+     * asked for.
+     */
+    public synchronized void contentInserted(JEditBuffer buffer, int startLine, int offset, int numLines, int length) {
+        if (numLines > 0) {
+            if (lineCount + numLines > counted.length) {
+                grow(lineCount + numLines);
+            }
+            move(startLine + 1, startLine + 1 + numLines, lineCount - startLine - 1);
+            lineCount += numLines;
+        }
+        uncount(startLine, startLine + numLines);
+    }
+
+    public synchronized void contentRemoved(JEditBuffer buffer, int startLine, int offset, int numLines, int length) {
+        if (numLines > 0) {
+            move(startLine + 1 + numLines, startLine + 1, lineCount - startLine - 1 - numLines);
+            lineCount -= numLines;
+        }
+        uncount(startLine, startLine);
+    }
+
+    public synchronized void bufferLoaded(JEditBuffer buffer) {
+        reset(buffer);
+    }
+
+    private void uncount(int startLine, int endLine) {
+        for (int line = startLine; line <= endLine && line < lineCount; line++) {
+            counted[line] = false;
+        }
+    }
+
+    private void move(int from, int to, int length) {
+        if (length > 0) {
+            System.arraycopy(counted, from, counted, to, length);
+            System.arraycopy(openCounts, from, openCounts, to, length);
+            System.arraycopy(endCounts, from, endCounts, to, length);
+            System.arraycopy(heredocs, from, heredocs, to, length);
+        }
+    }
+
+    private void grow(int minimumCapacity) {
+        int capacity = Math.max(minimumCapacity, counted.length * 2);
+        boolean[] newCounted = new boolean[capacity];
+        int[] newOpenCounts = new int[capacity];
+        int[] newEndCounts = new int[capacity];
+        byte[] newHeredocs = new byte[capacity];
+        System.arraycopy(counted, 0, newCounted, 0, lineCount);
+        System.arraycopy(openCounts, 0, newOpenCounts, 0, lineCount);
+        System.arraycopy(endCounts, 0, newEndCounts, 0, lineCount);
+        System.arraycopy(heredocs, 0, newHeredocs, 0, lineCount);
+        counted = newCounted;
+        openCounts = newOpenCounts;
+        endCounts = newEndCounts;
+        heredocs = newHeredocs;
+    }
+}
@@ -24,6 +24,7 @@ import org.gjt.sp.jedit.Buffer;
 import org.jedit.ruby.ast.Member;
 import org.jedit.ruby.ast.Problem;
 import org.jedit.ruby.ast.RubyMembers;
+import org.jedit.ruby.parser.ParseService;
 import org.jedit.ruby.parser.RubyParser;
 import org.jedit.ruby.RubyPlugin;
 
@@ -62,7 +63,7 @@ public final class FileStructurePopup {
         start = now();
 
         Buffer buffer = view.getBuffer();
-        RubyMembers members = RubyParser.getMembers(view);
+        RubyMembers members = ParseService.instance().getMembers(buffer);
 
         if (!members.containsErrors() && members.size() > 0) {
             showPopup(view, members, members.getMembers());
@@ -0,0 +1,255 @@
+/*
+ * LineTokenCache.java - Syntax tokens of a buffer's lines
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.structure;
+
+import org.gjt.sp.jedit.buffer.BufferAdapter;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.gjt.sp.jedit.syntax.DefaultTokenHandler;
+import org.gjt.sp.jedit.syntax.Token;
+import org.gjt.sp.jedit.syntax.TokenMarker;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Syntax tokens of a buffer's lines, marked when first asked for
+ * and kept until the buffer is edited at or before the line, as an
+ * edit can change how the lines after it are marked. The most
+ * recently used {@link #MAX_LINES} lines are kept per buffer.
+ * <p/>
+ * Token offsets are relative to the start of their line. Each
+ * line's tokens are held in order in an array, so the token at an
+ * offset is found by binary search.
+ * <p/>
+ * Caches are held in a {@link WeakHashMap} keyed by buffer, so a
+ * cache only refers to its buffer weakly.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class LineTokenCache extends BufferAdapter {
+
+    private static final int MAX_LINES = 256;
+
+    private static final Map<JEditBuffer, LineTokenCache> bufferToCache = new WeakHashMap<JEditBuffer, LineTokenCache>();
+
+    private final WeakReference<JEditBuffer> bufferReference;
+    private final Map<Integer, LineTokens> lineToTokens;
+    private final DefaultTokenHandler tokenHandler;
+    private TokenMarker tokenMarker;
+
+    private LineTokenCache(JEditBuffer buffer) {
+        bufferReference = new WeakReference<JEditBuffer>(buffer);
+        tokenHandler = new DefaultTokenHandler();
+        tokenMarker = buffer.getTokenMarker();
+        lineToTokens = new LinkedHashMap<Integer, LineTokens>(MAX_LINES, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, LineTokens> eldest) {
+                return size() > MAX_LINES;
+            }
+        };
+    }
+
+    /**
+     * Returns the buffer's cache, creating it and listening
+     * to the buffer's edits if it hasn't one.
+     */
+    public static synchronized LineTokenCache instance(JEditBuffer buffer) {
+        LineTokenCache cache = bufferToCache.get(buffer);
+        if (cache == null) {
+            cache = new LineTokenCache(buffer);
+            buffer.addBufferListener(cache);
+            bufferToCache.put(buffer, cache);
+        }
+        return cache;
+    }
+
+    public static synchronized void bufferClosed(JEditBuffer buffer) {
+        LineTokenCache cache = bufferToCache.remove(buffer);
+        if (cache != null) {
+            buffer.removeBufferListener(cache);
+        }
+    }
+
+    /**
+     * Returns the token before the caret, or the first token
+     * if the caret is at the start of its line.
+     */
+    public RubyToken getTokenAtCaret(int caret) {
+        JEditBuffer buffer = bufferReference.get();
+        int line = buffer.getLineOfOffset(caret);
+        int offset = caret - buffer.getLineStartOffset(line);
+        if (offset != 0) {
+            offset--;
+        }
+        return getLineTokens(buffer, line).getTokenAt(offset);
+    }
+
+    /**
+     * Returns the token holding the offset.
+     */
+    public RubyToken getTokenAt(int offset) {
+        JEditBuffer buffer = bufferReference.get();
+        int line = buffer.getLineOfOffset(offset);
+        return getLineTokens(buffer, line).getTokenAt(offset - buffer.getLineStartOffset(line));
+    }
+
+    /**
+     * Returns the tokens overlapping the range from start, up
+     * to but not including end, in order. Tokens of each line
+     * have offsets relative to the start of their line.
+     */
+    public List<RubyToken> getTokens(int start, int end) {
+        JEditBuffer buffer = bufferReference.get();
+        List<RubyToken> tokens = new ArrayList<RubyToken>();
+        int startLine = buffer.getLineOfOffset(start);
+        int endLine = buffer.getLineOfOffset(Math.max(start, end - 1));
+
+        for (int line = startLine; line <= endLine; line++) {
+            int lineStart = buffer.getLineStartOffset(line);
+            int from = line == startLine ? start - lineStart : 0;
+            int to = line == endLine ? end - lineStart : Integer.MAX_VALUE;
+            getLineTokens(buffer, line).addTokens(from, to, tokens);
+        }
+        return tokens;
+    }
+
+    private synchronized LineTokens getLineTokens(JEditBuffer buffer, int line) {
+        if (buffer.getTokenMarker() != tokenMarker) {
+            tokenMarker = buffer.getTokenMarker();
+            lineToTokens.clear();
+        }
+        LineTokens tokens = lineToTokens.get(line);
+        if (tokens == null) {
+            tokenHandler.init();
+            buffer.markTokens(line, tokenHandler);
+            tokens = new LineTokens(tokenHandler.getTokens());
+            lineToTokens.put(line, tokens);
+        }
+        return tokens;
+    }
+
+    private synchronized void invalidateFrom(int startLine) {
+        Iterator<Integer> lines = lineToTokens.keySet().iterator();
+        while (lines.hasNext()) {
+            if (lines.next() >= startLine) {
+                lines.remove();
+            }
+        }
+    }
+
+    /**
+     * Lines are invalidated before an edit as well as after,
+     * as the text area's caret listeners, told of an edit before
+     * other listeners, may ask for tokens of the edited text.
+     */
+    public void preContentInserted(JEditBuffer buffer, int startLine, int offset, int numLines, int length) {
+        invalidateFrom(startLine);
+    }
+
+    public void preContentRemoved(JEditBuffer buffer, int startLine, int offset, int numLines, int length) {
+        invalidateFrom(startLine);
+    }
+
+    public void contentInserted(JEditBuffer buffer, int startLine, int offset, int numLines, int length) {
+        invalidateFrom(startLine);
+    }
+
+    public void contentRemoved(JEditBuffer buffer, int startLine, int offset, int numLines, int length) {
+        invalidateFrom(startLine);
+    }
+
+    public void bufferLoaded(JEditBuffer buffer) {
+        invalidateFrom(0);
+    }
+
+    /**
+     * Tokens of a line, without the end of line token unless the
+     * line is empty. Tokens are wrapped as {@link RubyToken}s when
+     * first asked for, so the same instance is returned each time.
+     */
+    private static final class LineTokens {
+        private final Token firstToken;
+        private final Token[] tokens;
+        private final int[] offsets;
+        private final RubyToken[] rubyTokens;
+
+        LineTokens(Token firstToken) {
+            this.firstToken = firstToken;
+            int count = 0;
+            for (Token token = firstToken; token != null && token.id != Token.END; token = token.next) {
+                count++;
+            }
+            if (count == 0) {
+                count = 1;
+            }
+
+            tokens = new Token[count];
+            offsets = new int[count];
+            rubyTokens = new RubyToken[count];
+            Token token = firstToken;
+            for (int i = 0; i < count; i++) {
+                tokens[i] = token;
+                offsets[i] = token.offset;
+                token = token.next;
+            }
+        }
+
+        final RubyToken getTokenAt(int offset) {
+            return getRubyToken(getIndexAt(offset));
+        }
+
+        final void addTokens(int start, int end, List<RubyToken> list) {
+            int index = getIndexAt(start);
+            do {
+                list.add(getRubyToken(index));
+                index++;
+            } while (index < tokens.length && offsets[index] < end);
+        }
+
+        /**
+         * @return index of the last token starting
+         * at or before offset, or 0 if none do
+         */
+        private int getIndexAt(int offset) {
+            int low = 0;
+            int high = offsets.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (offsets[middle] <= offset) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return Math.max(0, low - 1);
+        }
+
+        private RubyToken getRubyToken(int index) {
+            if (rubyTokens[index] == null) {
+                rubyTokens[index] = new RubyToken(tokens[index], firstToken);
+            }
+            return rubyTokens[index];
+        }
+    }
+}
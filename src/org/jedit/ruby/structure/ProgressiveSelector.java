@@ -29,15 +29,13 @@ import org.jedit.ruby.RubyPlugin;
 import org.jedit.ruby.utils.CommandUtils;
 import org.jedit.ruby.ast.Member;
 import org.jedit.ruby.ast.RubyMembers;
-import org.jedit.ruby.parser.RubyParser;
+import org.jedit.ruby.parser.ParseService;
 
 /**
  * @author robmckinnon at users.sourceforge.net
  */
 public final class ProgressiveSelector {
 
-    private static final RubyTokenHandler tokenHandler = new RubyTokenHandler();
-
     public static void doProgressiveSelection(View view) {
         JEditTextArea textArea = view.getTextArea();
         String text = textArea.getText();
@@ -98,7 +96,7 @@ public final class ProgressiveSelector {
     }
 
     private static void handleLiteral(Buffer buffer, int caretPosition, JEditTextArea textArea, Selection selection) {
-        RubyToken first = tokenHandler.getTokenAtCaret(buffer, caretPosition);
+        RubyToken first = LineTokenCache.instance(buffer).getTokenAtCaret(caretPosition);
         RubyToken second = first.getNextToken();
 
         RubyToken prior = first;
@@ -189,7 +187,7 @@ public final class ProgressiveSelector {
         if (RubyPlugin.isRuby(view.getBuffer())) {
             try {
                 try {
-                    RubyMembers members = RubyParser.getMembers(view);
+                    RubyMembers members = ParseService.instance().getMembers(view.getBuffer());
                     Member member = members.getMemberAt(textArea.getCaretPosition());
                     selectBeyondLineRuby(textArea, selection, member);
                 } catch (Exception e) {
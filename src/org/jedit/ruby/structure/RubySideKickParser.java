@@ -19,13 +19,16 @@
  */
 package org.jedit.ruby.structure;
 
-import org.jrubyparser.SourcePosition;
 import sidekick.SideKickParser;
 import sidekick.SideKickParsedData;
 import sidekick.SideKickCompletion;
 import org.gjt.sp.jedit.Buffer;
 import org.gjt.sp.jedit.EditPane;
+import org.gjt.sp.jedit.jEdit;
+import org.jedit.ruby.ast.Error;
 import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.Problem;
+import org.jedit.ruby.parser.ParseService;
 import org.jedit.ruby.parser.RubyParser;
 import org.jedit.ruby.ast.RubyMembers;
 import org.jedit.ruby.RubyPlugin;
@@ -46,11 +49,8 @@ public final class RubySideKickParser extends SideKickParser {
     private static final ErrorSource.Error[] EMPTY_ERROR_LIST = new ErrorSource.Error[0];
     private static DefaultErrorSource errorSource;
 
-    private final RubyTokenHandler tokenHandler;
-
     public RubySideKickParser() {
         super("ruby");
-        tokenHandler = new RubyTokenHandler();
     }
 
     public final boolean supportsCompletion() {
@@ -67,12 +67,11 @@ public final class RubySideKickParser extends SideKickParser {
     }
 
     public final SideKickParsedData parse(final Buffer buffer, final DefaultErrorSource errorSource) {
-        String text = buffer.getText(0, buffer.getLength());
         RubySideKickParser.errorSource = errorSource;
 
-        RubyParser.WarningListener listener = new RubySideKickWarningListener(errorSource);
         SideKickParsedData data = new SideKickParsedData(buffer.getName());
-        RubyMembers members = RubyParser.getMembers(text, buffer.getPath(), listener, false);
+        RubyMembers members = ParseService.instance().getMembers(buffer);
+        addProblems(members.getProblems(), errorSource, buffer.getPath());
 
         if (!members.containsErrors()) {
             addNodes(data.root, members.getMembers(), buffer);
@@ -106,10 +105,13 @@ public final class RubySideKickParser extends SideKickParser {
 
     public final SideKickCompletion complete(EditPane editPane, int caret) {
         Buffer buffer = editPane.getBuffer();
-        RubyToken syntaxType = tokenHandler.getTokenAtCaret(buffer, caret);
+        RubyToken syntaxType = LineTokenCache.instance(buffer).getTokenAtCaret(caret);
         RubyCompletion completion = null;
 
         if (!ignore(syntaxType)) {
+            if (CodeCompletor.isDocumentationLoading()) {
+                editPane.getView().getStatus().setMessageAndClear(jEdit.getProperty("ruby.rdoc-loading.message"));
+            }
             CodeCompletor completor = new CodeCompletor(RubyPlugin.getActiveView());
 
             if (completor.isDotInsertionPoint()) {
@@ -144,23 +146,11 @@ public final class RubySideKickParser extends SideKickParser {
         }
     }
 
-    private void addWarning(String message, DefaultErrorSource errorSource, SourcePosition position) {
-        addToErrorList(ErrorSource.WARNING, errorSource, message, position);
-    }
-
-    private void addWarning(String message, DefaultErrorSource errorSource, int lineNumber, String fileName) {
-        addToErrorList(ErrorSource.WARNING, errorSource, message, lineNumber, fileName);
-    }
-
-    private void addError(String message, DefaultErrorSource errorSource, SourcePosition position) {
-        addToErrorList(ErrorSource.ERROR, errorSource, message, position);
-    }
-
-    private void addToErrorList(int type, DefaultErrorSource errorSource, String message, SourcePosition position) {
-        int line = position == null ? 0 : position.getEndLine();
-        String file = position == null ? null : position.getFile();
-
-        addToErrorList(type, errorSource, message, line, file);
+    private void addProblems(Problem[] problems, DefaultErrorSource errorSource, String file) {
+        for (Problem problem : problems) {
+            int type = problem instanceof Error ? ErrorSource.ERROR : ErrorSource.WARNING;
+            addToErrorList(type, errorSource, problem.getShortName(), problem.getLine(), file);
+        }
     }
 
     private void addToErrorList(int type, DefaultErrorSource errorSource, String message, int line, String file) {
@@ -191,56 +181,4 @@ public final class RubySideKickParser extends SideKickParser {
         }
     }
 
-    private final class RubySideKickWarningListener implements RubyParser.WarningListener {
-
-        private final DefaultErrorSource errorSource;
-
-        public RubySideKickWarningListener(DefaultErrorSource errorSource) {
-            this.errorSource = errorSource;
-        }
-
-        public boolean isVerbose() {
-            return false;
-        }
-
-        @Override
-        public void warn(ID id, SourcePosition position, String message, Object... data) {
-            addWarning(message, errorSource, position);
-        }
-
-        @Override
-        public void warn(ID id, String fileName, int lineNumber, String message, Object... data) {
-            addWarning(message, errorSource, lineNumber, fileName);
-        }
-
-        @Override
-        public void warn(ID id, String message, Object... data) {
-            addWarning(message, errorSource, null);
-        }
-
-        @Override
-        public void warning(ID id, String message, Object... data) {
-            addWarning(message, errorSource, null);
-        }
-
-        @Override
-        public void warning(ID id, SourcePosition position, String message, Object... data) {
-            addWarning(message, errorSource, position);
-        }
-
-        @Override
-        public void warning(ID id, String fileName, int lineNumber, String message, Object... data) {
-            addWarning(message, errorSource, lineNumber, fileName);
-        }
-
-        @Override
-        public final void error(SourcePosition position, String message) {
-            addError(message, errorSource, position);
-        }
-
-        @Override
-        public final void clear() {
-        }
-    }
-
 }
@@ -39,7 +39,7 @@ public final class RubyStructureMatcher extends MemberVisitorAdapter implements
         if (isRuby(textArea)) {
             match = null;
             EditorView view = RubyPlugin.getActiveView();
-            Member member = view.getMemberAtCaretPosition();
+            Member member = view.getParsedMemberAtCaretPosition();
 
             if (member != null) {
                 member.accept(this);
@@ -0,0 +1,127 @@
+/*
+ * LineCounterBenchmark.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import org.jedit.ruby.parser.LineCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reports the time to index the lines of a generated Ruby file,
+ * 10000 lines by default, and to find the line at random offsets
+ * in it, against a linear scan of boxed end offsets as the line
+ * counter used to make.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class LineCounterBenchmark {
+
+    private static final int RUNS = 20;
+    private static final int LOOKUPS = 100000;
+
+    public static void main(String[] args) {
+        int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        String text = createText(lineCount);
+        int[] offsets = new int[LOOKUPS];
+        Random random = new Random(0);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = random.nextInt(text.length());
+        }
+
+        for (int warm = 0; warm < 2; warm++) {
+            long start = System.nanoTime();
+            LineCounter lineCounter = null;
+            for (int i = 0; i < RUNS; i++) {
+                lineCounter = new LineCounter(text);
+            }
+            long indexNanos = (System.nanoTime() - start) / RUNS;
+
+            start = System.nanoTime();
+            long lineTotal = 0;
+            for (int offset : offsets) {
+                lineTotal += lineCounter.getLineAtOffset(offset);
+            }
+            long lookupNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Integer> endOffsets = null;
+            for (int i = 0; i < RUNS; i++) {
+                endOffsets = getEndOffsets(text);
+            }
+            long scanIndexNanos = (System.nanoTime() - start) / RUNS;
+
+            start = System.nanoTime();
+            long scanLineTotal = 0;
+            for (int offset : offsets) {
+                scanLineTotal += getLineAtOffset(endOffsets, offset);
+            }
+            long scanLookupNanos = System.nanoTime() - start;
+
+            if (lineTotal != scanLineTotal) {
+                throw new IllegalStateException("line counter and scan disagree");
+            }
+            System.out.println(lineCount + " lines, " + text.length() + " chars");
+            System.out.println("  line counter: index " + (indexNanos / 1000) + "us, "
+                    + LOOKUPS + " lookups " + (lookupNanos / 1000) + "us");
+            System.out.println("  linear scan:  index " + (scanIndexNanos / 1000) + "us, "
+                    + LOOKUPS + " lookups " + (scanLookupNanos / 1000) + "us");
+        }
+    }
+
+    private static String createText(int lineCount) {
+        StringBuffer buffer = new StringBuffer();
+        int line = 0;
+        while (line < lineCount) {
+            buffer.append("class Class").append(line).append(" < Base\n");
+            buffer.append("  # returns the total\n");
+            buffer.append("  def method").append(line).append("(first, second = nil)\n");
+            buffer.append("    total = first + second.to_i\n");
+            buffer.append("  end\n");
+            buffer.append("end\n");
+            line += 6;
+        }
+        return buffer.toString();
+    }
+
+    private static List<Integer> getEndOffsets(String text) {
+        List<Integer> endOffsets = new ArrayList<Integer>();
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == '\n') {
+                endOffsets.add(i);
+            }
+        }
+        return endOffsets;
+    }
+
+    private static int getLineAtOffset(List<Integer> endOffsets, int offset) {
+        int line = 0;
+        for (int endOffset : endOffsets) {
+            if (offset > endOffset) {
+                line++;
+            } else {
+                return line;
+            }
+        }
+        return line;
+    }
+}
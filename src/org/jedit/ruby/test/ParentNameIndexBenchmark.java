@@ -0,0 +1,127 @@
+/*
+ * ParentNameIndexBenchmark.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import org.jedit.ruby.ast.ClassMember;
+import org.jedit.ruby.ast.ParentMember;
+import org.jedit.ruby.cache.RubyCache;
+import org.jedit.ruby.ri.ClassDescription;
+import org.jedit.ruby.ri.RDocIndex;
+import org.jedit.ruby.ri.RDocIndexWriter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.*;
+
+/**
+ * Compares per keystroke latency of class completion lookups
+ * by {@link RubyCache#getParentsStartingWith} against sorting
+ * and scanning every class name on each call, as was done
+ * before the sorted name index.
+ * <p/>
+ * Run with the unjarred RDoc directory, e.g. ri/rdoc
+ * after running the unjar-rdoc target.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class ParentNameIndexBenchmark {
+
+    private static final int RUNS = 5;
+    private static final int REPEATS = 200;
+    private static final String[] TYPED = {"ActiveRecord::Base", "String", "hash", "Net::HTTP", "actionview", "Z"};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new RuntimeException("required args: rdocPath");
+        }
+        File indexFile = File.createTempFile("rdoc", ".index");
+        File docsFile = File.createTempFile("rdoc", ".docs");
+        indexFile.deleteOnExit();
+        docsFile.deleteOnExit();
+        RDocIndexWriter writer = new RDocIndexWriter();
+        writer.addDirectory(new File(args[0]));
+        writer.write(indexFile, docsFile);
+
+        RubyCache.resetCache();
+        final RubyCache cache = RubyCache.instance();
+        final Map<String, ParentMember> fullNameToMember = new HashMap<String, ParentMember>();
+        cache.beginUpdate();
+        RDocIndex.read(new FileInputStream(indexFile), null, new RDocIndex.Handler() {
+            public void handleClass(ClassDescription description, String set, String fileName) {
+                ClassMember parent = new ClassMember(description.getName());
+                String namespace = description.getNamespace();
+                if (namespace != null && namespace.trim().length() > 0) {
+                    parent.setNamespace(namespace + "::");
+                }
+                parent.setEndOffset(0);
+                cache.addClass(parent, set + '/' + fileName);
+                fullNameToMember.put(parent.getFullName(), parent);
+            }
+        });
+        cache.endUpdate();
+
+        List<String> keystrokes = new ArrayList<String>();
+        for (String typed : TYPED) {
+            for (int i = 1; i <= typed.length(); i++) {
+                keystrokes.add(typed.substring(0, i));
+            }
+        }
+        System.out.println(fullNameToMember.size() + " classes, " + keystrokes.size() + " keystrokes");
+
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            int matches = 0;
+            for (int i = 0; i < REPEATS; i++) {
+                for (String partial : keystrokes) {
+                    matches += scanParentsStartingWith(fullNameToMember, partial).size();
+                }
+            }
+            report("sort and scan", start, matches, keystrokes.size());
+
+            start = System.nanoTime();
+            matches = 0;
+            for (int i = 0; i < REPEATS; i++) {
+                for (String partial : keystrokes) {
+                    matches += cache.getParentsStartingWith(partial, true).size();
+                }
+            }
+            report("name index   ", start, matches, keystrokes.size());
+        }
+    }
+
+    private static void report(String label, long start, int matches, int keystrokes) {
+        long micros = (System.nanoTime() - start) / 1000 / (REPEATS * keystrokes);
+        System.out.println(label + ": " + micros + "us per keystroke, " + (matches / REPEATS) + " matches");
+    }
+
+    private static List<ParentMember> scanParentsStartingWith(Map<String, ParentMember> fullNameToMember, String partialClass) {
+        List<ParentMember> members = new ArrayList<ParentMember>();
+        List<String> names = new ArrayList<String>(fullNameToMember.keySet());
+        Collections.sort(names);
+        String lowerCasePartial = partialClass.toLowerCase();
+
+        for (String name : names) {
+            if (name.startsWith(partialClass) || name.toLowerCase().startsWith(lowerCasePartial)) {
+                members.add(fullNameToMember.get(name));
+            }
+        }
+        return members;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * ProjectIndexerBenchmark.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import org.jedit.ruby.cache.ProjectIndexer;
+import org.jedit.ruby.cache.RubyCache;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Reports how many files per second the {@link ProjectIndexer}
+ * indexes from a project root, e.g. a large Rails application,
+ * with one worker and with a worker per processor. The corpus
+ * and machine are printed first, so results can be quoted with
+ * what they were measured on.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class ProjectIndexerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new RuntimeException("required args: projectRoot");
+        }
+        File root = new File(args[0]);
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("corpus: " + root.getAbsolutePath() + ", " + processors + " processors, java "
+                + System.getProperty("java.version") + ", " + System.getProperty("os.name"));
+
+        index(root, processors);
+        index(root, 1);
+        index(root, processors);
+    }
+
+    private static void index(File root, int workerCount) throws InterruptedException {
+        RubyCache.resetCache();
+        ProjectIndexer indexer = new ProjectIndexer(Arrays.asList(root), workerCount);
+        try {
+            long start = System.currentTimeMillis();
+            int count = indexer.update();
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println(workerCount + " workers: " + count + " files in " + millis + "ms, "
+                    + (count * 1000L / millis) + " files/sec");
+        } finally {
+            indexer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * RDocIndexBenchmark.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import org.jedit.ruby.ri.ClassDescription;
+import org.jedit.ruby.ri.RDocIndex;
+import org.jedit.ruby.ri.RDocIndexWriter;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares load time and retained heap of the per class
+ * serialized .dat files against the single {@link RDocIndex},
+ * with comments either decoded or left in the documentation file.
+ * <p/>
+ * Run with the unjarred RDoc directory, e.g. ri/rdoc
+ * after running the unjar-rdoc target.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class RDocIndexBenchmark {
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new RuntimeException("required args: rdocPath");
+        }
+        File rdocDirectory = new File(args[0]);
+        List<File> files = new ArrayList<File>();
+        findDatFiles(rdocDirectory, files);
+
+        File indexFile = File.createTempFile("rdoc", ".index");
+        File docsFile = File.createTempFile("rdoc", ".docs");
+        indexFile.deleteOnExit();
+        docsFile.deleteOnExit();
+        RDocIndexWriter writer = new RDocIndexWriter();
+        writer.addDirectory(rdocDirectory);
+        writer.write(indexFile, docsFile);
+
+        long datBytes = 0;
+        for (File file : files) {
+            datBytes += file.length();
+        }
+        System.out.println("size: " + files.size() + " .dat files " + kb(datBytes)
+                + ", index " + kb(indexFile.length()) + " + docs " + kb(docsFile.length()));
+
+        for (int i = 0; i < RUNS; i++) {
+            report("serialized .dat", loadDatFiles(files));
+            report("rdoc index     ", loadIndex(indexFile, docsFile));
+            report("rdoc index lazy", loadIndex(indexFile, null));
+        }
+    }
+
+    private static void report(String label, Result result) {
+        System.out.println(label + ": " + result.classes + " classes in " + result.millis + "ms, retained heap " + kb(result.heap));
+    }
+
+    private static Result loadDatFiles(List<File> files) throws Exception {
+        long heapBefore = usedHeap();
+        long start = System.currentTimeMillis();
+        List<ClassDescription> descriptions = new ArrayList<ClassDescription>();
+
+        for (File file : files) {
+            ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                descriptions.add((ClassDescription)input.readObject());
+            } finally {
+                input.close();
+            }
+        }
+        return new Result(descriptions, System.currentTimeMillis() - start, heapBefore);
+    }
+
+    private static Result loadIndex(File indexFile, File docsFile) throws IOException {
+        long heapBefore = usedHeap();
+        long start = System.currentTimeMillis();
+        final List<ClassDescription> descriptions = new ArrayList<ClassDescription>();
+
+        byte[] docs = docsFile == null ? null : RDocIndex.readFully(new FileInputStream(docsFile));
+        RDocIndex.read(new FileInputStream(indexFile), docs, new RDocIndex.Handler() {
+            public void handleClass(ClassDescription description, String set, String fileName) {
+                descriptions.add(description);
+            }
+        });
+        docs = null;
+        return new Result(descriptions, System.currentTimeMillis() - start, heapBefore);
+    }
+
+    private static void findDatFiles(File directory, List<File> files) {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                findDatFiles(file, files);
+            } else if (file.getName().endsWith(".dat")) {
+                files.add(file);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String kb(long bytes) {
+        return (bytes / 1024) + "KB";
+    }
+
+    private static final class Result {
+        private final int classes;
+        private final long millis;
+        private final long heap;
+
+        Result(List<ClassDescription> descriptions, long millis, long heapBefore) {
+            this.millis = millis;
+            heap = usedHeap() - heapBefore;
+            classes = descriptions.size();
+        }
+    }
+}
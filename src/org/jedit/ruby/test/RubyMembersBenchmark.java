@@ -0,0 +1,136 @@
+/*
+ * RubyMembersBenchmark.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import org.jedit.ruby.ast.ClassMember;
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.Method;
+import org.jedit.ruby.ast.Problem;
+import org.jedit.ruby.ast.RubyMembers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reports the time to find the member at, and the last member
+ * before, random offsets in generated members, 5000 methods in
+ * classes of 50 by default, against a linear scan of the members
+ * as the lookups used to make.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class RubyMembersBenchmark {
+
+    private static final int LOOKUPS = 100000;
+    private static final int METHODS_PER_CLASS = 50;
+    private static final int METHOD_LENGTH = 60;
+
+    public static void main(String[] args) {
+        int methodCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        List<Member> memberList = new ArrayList<Member>();
+        Member[] members = createMembers(methodCount, memberList);
+        int textLength = memberList.get(memberList.size() - 1).getEndOffset() + 10;
+
+        int[] offsets = new int[LOOKUPS];
+        Random random = new Random(0);
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = random.nextInt(textLength);
+        }
+
+        for (int warm = 0; warm < 3; warm++) {
+            RubyMembers rubyMembers = new RubyMembers(members, new ArrayList<Problem>(), textLength);
+            long start = System.nanoTime();
+            int total = 0;
+            for (int offset : offsets) {
+                total += rubyMembers.getMemberAt(offset).getStartOffset();
+                Member member = rubyMembers.getLastMemberBefore(offset);
+                total += member == null ? 0 : member.getStartOffset();
+            }
+            long lookupNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int scanTotal = 0;
+            for (int offset : offsets) {
+                Member member = scanForMemberAt(memberList, offset);
+                scanTotal += member == null ? 0 : member.getStartOffset();
+                member = scanForLastMemberBefore(memberList, offset);
+                scanTotal += member == null ? 0 : member.getStartOffset();
+            }
+            long scanNanos = System.nanoTime() - start;
+
+            if (total != scanTotal) {
+                throw new IllegalStateException("members and scan disagree");
+            }
+            System.out.println(memberList.size() + " members, " + LOOKUPS + " lookups of each kind");
+            System.out.println("  offset index: " + (lookupNanos / 1000) + "us");
+            System.out.println("  linear scan:  " + (scanNanos / 1000) + "us");
+        }
+    }
+
+    private static Member[] createMembers(int methodCount, List<Member> memberList) {
+        List<Member> classes = new ArrayList<Member>();
+        int offset = 0;
+        for (int i = 0; i < methodCount; i += METHODS_PER_CLASS) {
+            Member classMember = createMember(new ClassMember("Class" + i), offset, offset + 6);
+            classes.add(classMember);
+            memberList.add(classMember);
+            offset += 20;
+
+            for (int j = i; j < Math.min(methodCount, i + METHODS_PER_CLASS); j++) {
+                Member method = new Method("method" + j, "", "benchmark.rb", "benchmark.rb", false);
+                createMember(method, offset, offset + 4);
+                method.setEndOffset(offset + METHOD_LENGTH);
+                classMember.addChildMember(method);
+                memberList.add(method);
+                offset += METHOD_LENGTH + 2;
+            }
+            classMember.setEndOffset(offset);
+            offset += 5;
+        }
+        return classes.toArray(new Member[classes.size()]);
+    }
+
+    private static Member createMember(Member member, int outerOffset, int startOffset) {
+        member.setStartOuterOffset(outerOffset);
+        member.setStartOffset(startOffset);
+        return member;
+    }
+
+    private static Member scanForMemberAt(List<Member> memberList, int offset) {
+        Member found = null;
+        for (Member member : memberList) {
+            if (offset >= member.getStartOuterOffset() && offset <= member.getEndOffset()) {
+                found = member;
+            }
+        }
+        return found;
+    }
+
+    private static Member scanForLastMemberBefore(List<Member> memberList, int offset) {
+        for (int i = 0; i < memberList.size(); i++) {
+            if (offset >= memberList.get(i).getStartOffset()
+                    && (i == memberList.size() - 1 || offset < memberList.get(i + 1).getStartOffset())) {
+                return memberList.get(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * RubyParserBenchmark.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.parser.RubyParser;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Reports the time to parse a Ruby file end to end, from text to
+ * members, bypassing the parse cache. Parses the given file, or a
+ * generated file of 5000 lines with one line, continued line and
+ * commented parameter lists. Run against earlier revisions to
+ * compare parse times.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class RubyParserBenchmark {
+
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) throws IOException {
+        String text = args.length > 0 ? readFile(new File(args[0])) : createText(5000);
+        String path = args.length > 0 ? args[0] : "benchmark.rb";
+        System.out.println("text: " + (args.length > 0 ? path : "generated") + ", java "
+                + System.getProperty("java.version") + ", " + System.getProperty("os.name"));
+
+        for (int warm = 0; warm < 3; warm++) {
+            long start = System.nanoTime();
+            int memberCount = 0;
+            for (int i = 0; i < RUNS; i++) {
+                List<Member> members = RubyParser.getMembersAsList(text, path, null);
+                memberCount = count(members);
+            }
+            long micros = (System.nanoTime() - start) / RUNS / 1000;
+            System.out.println(text.length() + " chars, " + memberCount + " members, parsed in " + micros + "us");
+        }
+    }
+
+    private static int count(List<Member> members) {
+        int count = 0;
+        if (members != null) {
+            for (Member member : members) {
+                count++;
+                if (member.hasChildMembers()) {
+                    count += count(member.getChildMembersAsList());
+                }
+            }
+        }
+        return count;
+    }
+
+    private static String createText(int lineCount) {
+        StringBuffer buffer = new StringBuffer();
+        int line = 0;
+        while (line < lineCount) {
+            buffer.append("module Module").append(line).append("\n");
+            buffer.append("  class Class").append(line).append(" < Base; def size; 0; end; end\n");
+            buffer.append("  class Other").append(line).append("\n");
+            buffer.append("    include Comparable\n");
+            buffer.append("    def method").append(line).append("(first, second = {}) # returns total\n");
+            buffer.append("      first + second.size\n");
+            buffer.append("    end\n");
+            buffer.append("    def self.create(name, \\\n");
+            buffer.append("                    options = nil)\n");
+            buffer.append("      new\n");
+            buffer.append("    end\n");
+            buffer.append("  end\n");
+            buffer.append("end\n");
+            line += 13;
+        }
+        return buffer.toString();
+    }
+
+    private static String readFile(File file) throws IOException {
+        StringBuffer buffer = new StringBuffer();
+        Reader reader = new FileReader(file);
+        try {
+            char[] chars = new char[4096];
+            int length;
+            while (-1 != (length = reader.read(chars))) {
+                buffer.append(chars, 0, length);
+            }
+        } finally {
+            reader.close();
+        }
+        return buffer.toString();
+    }
+}
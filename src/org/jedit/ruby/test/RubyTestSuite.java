@@ -30,12 +30,18 @@ public final class RubyTestSuite extends TestSuite {
     public static Test suite() {
         TestSuite suite = new TestSuite("ruby");
         suite.addTestSuite(TestRubyParser.class);
+        suite.addTestSuite(TestRubyMembers.class);
         suite.addTestSuite(TestRubyCache.class);
+        suite.addTestSuite(TestRubyCacheSnapshot.class);
+        suite.addTestSuite(TestProjectIndexer.class);
         suite.addTestSuite(TestRDocSeacher.class);
         suite.addTestSuite(TestYamlParser.class);
         suite.addTestSuite(TestLineCounter.class);
+        suite.addTestSuite(TestCharCaretListener.class);
+        suite.addTestSuite(TestLineTokenCache.class);
         suite.addTestSuite(TestCodeAnalyzer.class);
         suite.addTestSuite(TestAutoIndent.class);
+        suite.addTestSuite(TestEndBalanceIndex.class);
         suite.addTestSuite(TestJRubyParser.class);
         return suite;
     }
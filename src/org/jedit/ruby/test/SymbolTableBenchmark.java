@@ -0,0 +1,140 @@
+/*
+ * SymbolTableBenchmark.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import org.jedit.ruby.ast.ClassMember;
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.Method;
+import org.jedit.ruby.ast.SymbolTable;
+import org.jedit.ruby.ri.ClassDescription;
+import org.jedit.ruby.ri.MethodDescription;
+import org.jedit.ruby.ri.RDocIndex;
+import org.jedit.ruby.ri.RDocIndexWriter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Reports the retained heap of the members created for the
+ * full RDoc load, and how many of their string fields are
+ * separate copies of an equal string, to show the strings
+ * shared through the {@link SymbolTable}.
+ * <p/>
+ * Members are created from the RDoc index as the RiParser
+ * creates them. Run with the unjarred RDoc directory, e.g.
+ * ri/rdoc after running the unjar-rdoc target.
+ *
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class SymbolTableBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new RuntimeException("required args: rdocPath");
+        }
+        File indexFile = File.createTempFile("rdoc", ".index");
+        File docsFile = File.createTempFile("rdoc", ".docs");
+        indexFile.deleteOnExit();
+        docsFile.deleteOnExit();
+        RDocIndexWriter writer = new RDocIndexWriter();
+        writer.addDirectory(new File(args[0]));
+        writer.write(indexFile, docsFile);
+
+        long heapBefore = usedHeap();
+        List<Member> members = loadMembers(indexFile);
+        long heap = usedHeap() - heapBefore;
+        System.out.println(members.size() + " members, retained heap " + (heap / 1024) + "KB");
+        reportStrings(members);
+    }
+
+    private static List<Member> loadMembers(File indexFile) throws Exception {
+        final List<Member> members = new ArrayList<Member>();
+
+        RDocIndex.read(new FileInputStream(indexFile), null, new RDocIndex.Handler() {
+            public void handleClass(ClassDescription description, String set, String fileName) {
+                ClassMember parent = new ClassMember(description.getName());
+                parent.setSuperClassName(description.getSuperclass());
+                String namespace = description.getNamespace();
+                if (namespace != null && namespace.trim().length() > 0) {
+                    parent.setNamespace(namespace + "::");
+                }
+                parent.setEndOffset(0);
+                parent.getLowerCaseName();
+                members.add(parent);
+
+                addMethods(description.getInstanceMethods(), parent, members);
+                addMethods(description.getClassMethods(), parent, members);
+            }
+        });
+        return members;
+    }
+
+    private static void addMethods(List<MethodDescription> descriptions, ClassMember parent, List<Member> members) {
+        for (MethodDescription description : descriptions) {
+            String name = description.getName();
+            name = name.startsWith(".") ? name.substring(1) : name;
+            Method method = new Method(name, null, "", "", description.isClassMethod());
+            method.setNamespace(description.getNamespace());
+            method.setDocumentationBlockParams(description.getBlockParameters());
+            method.setDocumentationParams(description.getParameters());
+            method.setParentMemberName(parent.getName());
+            method.setReceiver("", null);
+            method.setEndOffset(0);
+            method.getLowerCaseName();
+            parent.addChildMember(method);
+            members.add(method);
+        }
+    }
+
+    private static void reportStrings(List<Member> members) throws IllegalAccessException {
+        Map<String, String> references = new IdentityHashMap<String, String>();
+        Set<String> values = new HashSet<String>();
+        int fields = 0;
+
+        for (Member member : members) {
+            for (Class type = member.getClass(); type != Object.class; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (field.getType() == String.class && !Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        String value = (String)field.get(member);
+                        if (value != null) {
+                            fields++;
+                            references.put(value, value);
+                            values.add(value);
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println(fields + " string fields refer to " + references.size()
+                + " string objects holding " + values.size() + " distinct values");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
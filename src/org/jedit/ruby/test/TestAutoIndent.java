@@ -89,6 +89,14 @@ public final class TestAutoIndent extends TestCase {
         assertFalse(hasEnd("  def tag_end name"));
     }
 
+    public final void testOpenCount() {
+        assertEquals("Assert def opens block", 1, AutoIndentAndInsertEnd.getOpenCount("def red"));
+        assertEquals("Assert do opens block", 1, AutoIndentAndInsertEnd.getOpenCount("x.each do |y|"));
+        assertEquals("Assert class and def open blocks", 2, AutoIndentAndInsertEnd.getOpenCount("class Red; def blue"));
+        assertEquals("Assert trailing condition opens no block", 0, AutoIndentAndInsertEnd.getOpenCount("red if true"));
+        assertEquals("Assert elsif opens no block", 0, AutoIndentAndInsertEnd.getOpenCount("elsif x"));
+    }
+
     public final void testMatchIf() {
 //        REMatch match = AutoIndentAndInsertEnd.MatchRegExp.instance.getMatch("  if true");
         MatchResult match = AutoIndentAndInsertEnd.MatchRegExp.instance.firstMatch("  if true");
@@ -0,0 +1,108 @@
+/*
+ * TestCharCaretListener.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import junit.framework.TestCase;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.jedit.ruby.structure.RubyToken;
+import org.jedit.ruby.utils.CharCaretListener;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class TestCharCaretListener extends TestCase {
+
+    private static final String LINE = "  def quack(volume) # loudly\n";
+    private static final int LINE_COUNT = 10000;
+    private static final int MOVES = 1000;
+
+    public final void testCharsAroundCaret() {
+        JEditBuffer buffer = createBuffer(1);
+        CharCaretListener.caretMoved(buffer, 3, 3);
+        assertEquals("Assert char behind correct", ' ', CharCaretListener.getCharBehind());
+        assertEquals("Assert char ahead correct", 'd', CharCaretListener.getCharAhead());
+
+        CharCaretListener.caretMoved(buffer, 4, 4);
+        assertEquals("Assert char last behind correct", ' ', CharCaretListener.getCharLastBehind());
+        assertEquals("Assert char behind correct", 'd', CharCaretListener.getCharBehind());
+
+        CharCaretListener.caretMoved(buffer, LINE.length(), LINE.length());
+        assertEquals("Assert char behind at end correct", '\n', CharCaretListener.getCharBehind());
+        assertEquals("Assert no char ahead at end", (char)-1, CharCaretListener.getCharAhead());
+
+        CharCaretListener.caretMoved(buffer, 3, 5);
+        assertNull("Assert no token with selection", CharCaretListener.getCurrentToken());
+        assertFalse("Assert no char with selection", CharCaretListener.hasCharLastBehind());
+    }
+
+    public final void testTokenReusedWithinLine() {
+        JEditBuffer buffer = createBuffer(3);
+        int lineStart = LINE.length();
+        CharCaretListener.caretMoved(buffer, lineStart + 4, lineStart + 4);
+        RubyToken token = CharCaretListener.getCurrentToken();
+        assertNotNull("Assert token at caret", token);
+
+        CharCaretListener.caretMoved(buffer, lineStart + 4, lineStart + 4);
+        assertSame("Assert token reused", token, CharCaretListener.getCurrentToken());
+    }
+
+    public final void testCaretMovesDontCopyText() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)bean;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+
+        JEditBuffer buffer = createBuffer(LINE_COUNT);
+        int lineStart = LINE.length() * (LINE_COUNT / 2);
+        moveAlongLine(buffer, lineStart);
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        moveAlongLine(buffer, lineStart);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("Assert caret moves allocate less than the text, allocated " + allocated,
+                allocated < buffer.getLength());
+    }
+
+    private static void moveAlongLine(JEditBuffer buffer, int lineStart) {
+        for (int i = 0; i < MOVES; i++) {
+            int caret = lineStart + 1 + (i % (LINE.length() - 1));
+            CharCaretListener.caretMoved(buffer, caret, caret);
+        }
+    }
+
+    private static JEditBuffer createBuffer(int lineCount) {
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; i < lineCount; i++) {
+            text.append(LINE);
+        }
+        JEditBuffer buffer = new JEditBuffer();
+        buffer.insert(0, text.toString());
+        return buffer;
+    }
+}
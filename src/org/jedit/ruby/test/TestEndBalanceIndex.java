@@ -0,0 +1,79 @@
+/*
+ * TestEndBalanceIndex.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import junit.framework.TestCase;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.jedit.ruby.structure.EndBalanceIndex;
+
+/**
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class TestEndBalanceIndex extends TestCase {
+
+    private static final String CODE = "class Red\n" +
+            "  def blue\n" +
+            "    [1, 2].each do |i|\n" +
+            "      puts i if i > 1\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n";
+
+    private static final String HEREDOC = "  def text\n" +
+            "    <<-EOF\n" +
+            "      def quoted\n" +
+            "    EOF\n" +
+            "  end\n";
+
+    public final void testBalanced() {
+        assertEquals("Assert balanced", 0, getBalance(createBuffer(CODE)));
+    }
+
+    public final void testBalanceAfterEdits() {
+        JEditBuffer buffer = createBuffer(CODE);
+        EndBalanceIndex index = EndBalanceIndex.instance(buffer);
+        assertEquals("Assert balanced", 0, index.getBalance());
+
+        int offset = CODE.indexOf("  end\nend");
+        buffer.insert(offset, "  end\n");
+        assertEquals("Assert extra end unbalances", -1, index.getBalance());
+
+        buffer.insert(offset, "  def green\n");
+        assertEquals("Assert new def balances", 0, index.getBalance());
+
+        buffer.remove(offset, "  def green\n  end\n".length());
+        assertEquals("Assert balanced after remove", 0, index.getBalance());
+        assertEquals("Assert same as new index", getBalance(createBuffer(buffer.getText(0, buffer.getLength()))), index.getBalance());
+    }
+
+    public final void testHeredocOpensNoBlocks() {
+        assertEquals("Assert def in heredoc ignored", 0, getBalance(createBuffer(HEREDOC)));
+    }
+
+    private static int getBalance(JEditBuffer buffer) {
+        return EndBalanceIndex.instance(buffer).getBalance();
+    }
+
+    private static JEditBuffer createBuffer(String text) {
+        JEditBuffer buffer = new JEditBuffer();
+        buffer.insert(0, text);
+        return buffer;
+    }
+}
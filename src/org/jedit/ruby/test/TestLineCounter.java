@@ -35,6 +35,8 @@ public final class TestLineCounter extends TestCase {
                     "  2 \n" +
                     "3 ";
 
+    private static final String SPACES = "      ";
+
     public final void testEnhancedForLoop() {
         StringBuffer buffer = new StringBuffer();
         for (String i : getJunk(buffer)) {
@@ -61,6 +63,25 @@ public final class TestLineCounter extends TestCase {
         assertLineAtOffsetCorrect(9, 2, lineCounter);
     }
 
+    public final void testLineAtEveryOffset() {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < 500; i++) {
+            buffer.append(SPACES.substring(0, i % 7)).append("line ").append(i).append('\n');
+        }
+        String text = buffer.toString();
+        LineCounter lineCounter = new LineCounter(text);
+        assertEquals("Assert line count correct", 500, lineCounter.getLineCount());
+
+        int line = 0;
+        for (int offset = 0; offset < text.length(); offset++) {
+            assertLineAtOffsetCorrect(offset, line, lineCounter);
+            if (text.charAt(offset) == '\n') {
+                line++;
+            }
+        }
+        assertLineAtOffsetCorrect(text.length(), 500, lineCounter);
+    }
+
     private static void assertLineAtOffsetCorrect(int offset, int expectedLine, LineCounter lineCounter) {
         int line = lineCounter.getLineAtOffset(offset);
         assertEquals("assert line at offset " + offset + " is correct: ", expectedLine, line);
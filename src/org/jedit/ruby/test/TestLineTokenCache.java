@@ -0,0 +1,102 @@
+/*
+ * TestLineTokenCache.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import junit.framework.TestCase;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
+import org.jedit.ruby.structure.LineTokenCache;
+import org.jedit.ruby.structure.RubyToken;
+
+import java.util.List;
+
+/**
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class TestLineTokenCache extends TestCase {
+
+    private static final String CODE = "class Red\n" +
+            "  def blue(green) # yellow\n" +
+            "\n" +
+            "  end\n" +
+            "end\n";
+
+    public final void testTokenAtEveryOffset() {
+        JEditBuffer buffer = createBuffer(CODE);
+        LineTokenCache cache = LineTokenCache.instance(buffer);
+
+        for (int offset = 0; offset < CODE.length(); offset++) {
+            int line = buffer.getLineOfOffset(offset);
+            int offsetInLine = offset - buffer.getLineStartOffset(line);
+            RubyToken token = cache.getTokenAt(offset);
+
+            if (buffer.getLineLength(line) > offsetInLine) {
+                assertTrue("Assert token starts before " + offset, token.offset <= offsetInLine);
+                assertTrue("Assert token ends after " + offset, token.offset + token.length > offsetInLine);
+            }
+            assertSame("Assert same token returned", token, cache.getTokenAt(offset));
+        }
+    }
+
+    public final void testTokenAtCaret() {
+        JEditBuffer buffer = createBuffer(CODE);
+        LineTokenCache cache = LineTokenCache.instance(buffer);
+        int caret = CODE.indexOf("blue");
+
+        assertSame("Assert token before caret", cache.getTokenAt(caret - 1), cache.getTokenAtCaret(caret));
+        assertSame("Assert first token at line start", cache.getTokenAt(0), cache.getTokenAtCaret(0));
+    }
+
+    public final void testTokensCoverRange() {
+        JEditBuffer buffer = createBuffer(CODE);
+        LineTokenCache cache = LineTokenCache.instance(buffer);
+        int start = CODE.indexOf("  def");
+        int end = CODE.lastIndexOf("\nend");
+
+        List<RubyToken> tokens = cache.getTokens(start, end);
+        assertSame("Assert first token holds start", cache.getTokenAt(start), tokens.get(0));
+        assertSame("Assert last token holds end", cache.getTokenAt(end - 1), tokens.get(tokens.size() - 1));
+
+        int length = 0;
+        for (RubyToken token : tokens) {
+            length += token.length;
+        }
+        assertEquals("Assert tokens cover lines of range", buffer.getLineLength(1) + buffer.getLineLength(3), length);
+    }
+
+    public final void testEditInvalidatesLines() {
+        JEditBuffer buffer = createBuffer(CODE);
+        LineTokenCache cache = LineTokenCache.instance(buffer);
+        int offset = CODE.indexOf("end\nend");
+        RubyToken before = cache.getTokenAt(offset);
+        RubyToken first = cache.getTokenAt(0);
+
+        buffer.insert(CODE.indexOf("\n\n") + 1, "    purple\n");
+        offset += "    purple\n".length();
+
+        assertSame("Assert line before edit kept", first, cache.getTokenAt(0));
+        assertNotSame("Assert line after edit marked again", before, cache.getTokenAt(offset));
+    }
+
+    private static JEditBuffer createBuffer(String text) {
+        JEditBuffer buffer = new JEditBuffer();
+        buffer.insert(0, text);
+        return buffer;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * TestProjectIndexer.java - 
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import junit.framework.TestCase;
+import org.jedit.ruby.ast.ClassMember;
+import org.jedit.ruby.ast.Method;
+import org.jedit.ruby.cache.ProjectIndexFile;
+import org.jedit.ruby.cache.ProjectIndexer;
+import org.jedit.ruby.cache.RubyCache;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class TestProjectIndexer extends TestCase {
+
+    private File root;
+
+    public void setUp() throws IOException {
+        RubyCache.resetCache();
+        root = File.createTempFile("project", "");
+        root.delete();
+        new File(root, "lib").mkdirs();
+    }
+
+    public void tearDown() {
+        delete(root);
+    }
+
+    public final void testIndexChangedFiles() throws Exception {
+        File file = write("lib/umber.rb", "class Umber\n  def darken\n  end\nend\n");
+        write("tmp/ignored.rb", "class Ignored\nend\n");
+        ProjectIndexer indexer = new ProjectIndexer(Arrays.asList(root), 2);
+
+        try {
+            assertEquals("Assert file parsed", 1, indexer.update());
+            assertNotNull("Assert class indexed", RubyCache.instance().getParentMember("Umber"));
+            assertNull("Assert file outside source directories ignored", RubyCache.instance().getParentMember("Ignored"));
+            assertEquals("Assert unchanged file not parsed", 0, indexer.update());
+
+            write("lib/umber.rb", "class Umber\n  def lighten\n  end\nend\n");
+            file.setLastModified(file.lastModified() + 2000);
+            assertEquals("Assert changed file parsed", 1, indexer.update());
+            assertEquals("Assert method replaced", 1, RubyCache.instance().getMethods("lighten").size());
+            assertEquals("Assert method replaced", 0, RubyCache.instance().getMethods("darken").size());
+
+            file.delete();
+            assertEquals("Assert no file parsed", 0, indexer.update());
+            assertNull("Assert deleted file removed", RubyCache.instance().getParentMember("Umber"));
+        } finally {
+            indexer.shutdown();
+        }
+    }
+
+    public final void testIndexFileRestoresUnchangedFiles() throws Exception {
+        File umber = write("lib/umber.rb", "module Paint\n  class Umber < Pigment\n    include Earthy\n    def self.darken(amount)\n    end\n  end\nend\n");
+        File sienna = write("lib/sienna.rb", "class Sienna\n  def burn\n  end\nend\n");
+        File file = new File(root, "project.index");
+        assertEquals("Assert files parsed", 2, update(new ProjectIndexFile(file, "key")));
+        ClassMember parsed = (ClassMember)RubyCache.instance().getParentMember("Paint::Umber");
+        Method parsedMethod = RubyCache.instance().getMethods("darken").get(0);
+
+        RubyCache.resetCache();
+        assertEquals("Assert unchanged files not parsed", 0, update(new ProjectIndexFile(file, "key")));
+        ClassMember restored = (ClassMember)RubyCache.instance().getParentMember("Paint::Umber");
+        assertNotSame("Assert class read from index file", parsed, restored);
+        assertEquals("Assert class restored", parsed, restored);
+        assertEquals("Assert superclass restored", parsed.getSuperClassName(), restored.getSuperClassName());
+        assertEquals("Assert include restored", Arrays.asList("Earthy"), restored.getIncludedModuleNames());
+
+        Method method = RubyCache.instance().getMethods("darken").get(0);
+        assertEquals("Assert method restored", parsedMethod.getFullName(), method.getFullName());
+        assertEquals("Assert method restored", parsedMethod.getShortName(), method.getShortName());
+        assertEquals("Assert method restored", parsedMethod.isClassMethod(), method.isClassMethod());
+        assertEquals("Assert offset restored", parsedMethod.getStartOffset(), method.getStartOffset());
+        assertEquals("Assert offset restored", parsedMethod.getEndOffset(), method.getEndOffset());
+
+        RubyCache.resetCache();
+        sienna.setLastModified(sienna.lastModified() + 2000);
+        write("lib/umber.rb", "class Umber\nend\n");
+        umber.setLastModified(umber.lastModified() + 2000);
+        assertEquals("Assert only file with changed text parsed", 1, update(new ProjectIndexFile(file, "key")));
+        assertNotNull("Assert touched file restored", RubyCache.instance().getParentMember("Sienna"));
+
+        RubyCache.resetCache();
+        assertEquals("Assert index for other roots not used", 2, update(new ProjectIndexFile(file, "other")));
+    }
+
+    private int update(ProjectIndexFile indexFile) throws InterruptedException {
+        ProjectIndexer indexer = new ProjectIndexer(Arrays.asList(root), 2, indexFile);
+        try {
+            return indexer.update();
+        } finally {
+            indexer.shutdown();
+        }
+    }
+
+    private File write(String path, String code) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(code);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -20,9 +20,12 @@
 package org.jedit.ruby.test;
 
 import org.jedit.ruby.cache.RubyCache;
+import org.jedit.ruby.ast.ClassMember;
 import org.jedit.ruby.ast.Member;
 import org.jedit.ruby.ast.Method;
+import org.jedit.ruby.ast.ParentMember;
 
+import java.util.Arrays;
 import java.util.List;
 
 import junit.framework.TestCase;
@@ -77,6 +80,167 @@ public final class TestRubyCache extends TestCase {
         assertFindByClassCorrect("Blue", 0, "red", 1, "DEF_IN_MODULE");
     }
 
+    public final void testRemoveMembers() {
+        RubyCache.instance().addClass(createClass("Cyan", "tint"), "CYAN");
+        RubyCache.instance().addClass(createClass("Magenta", "tint"), "MAGENTA");
+        assertFindByMethodCorrect("tint", 0, "Cyan", 2);
+
+        RubyCache.instance().removeMembers("CYAN");
+        assertFindByMethodCorrect("tint", 0, "Magenta", 1);
+        assertEquals("Assert methods removed", 0, RubyCache.instance().getMethodsOfMemberAsList("Cyan").size());
+        assertEquals("Assert method removed", 1, RubyCache.instance().getMethods("tint").size());
+        assertNull("Assert class removed", RubyCache.instance().getParentMember("Cyan"));
+
+        RubyCache.instance().removeMembers("MAGENTA");
+        assertEquals("Assert method removed", 0, RubyCache.instance().getMethods("tint").size());
+    }
+
+    public final void testReplaceReopenedClassMembers() {
+        RubyCache.instance().addClass(createClass("Yellow", "tint"), "YELLOW");
+        RubyCache.instance().addClass(createClass("Yellow", "shade"), "YELLOW_EXT");
+        assertEquals("Assert both files' methods", 2, RubyCache.instance().getMethodsOfMemberAsList("Yellow").size());
+
+        RubyCache.instance().addClass(createClass("Yellow", "hue"), "YELLOW");
+        List<Method> methods = RubyCache.instance().getMethodsOfMemberAsList("Yellow");
+        assertEquals("Assert replaced method removed", 2, methods.size());
+        assertEquals("Assert name correct", "hue", methods.get(0).getName());
+        assertEquals("Assert name correct", "shade", methods.get(1).getName());
+        assertEquals("Assert method removed", 0, RubyCache.instance().getMethods("tint").size());
+
+        RubyCache.instance().removeMembers("YELLOW");
+        assertFindByMethodCorrect("shade", 0, "Yellow", 1);
+        assertEquals("Assert reopened class kept", 1, RubyCache.instance().getMethodsOfMemberAsList("Yellow").size());
+        assertNotNull("Assert reopened class kept", RubyCache.instance().getParentMember("Yellow"));
+
+        RubyCache.instance().removeMembers("YELLOW_EXT");
+        assertNull("Assert class removed", RubyCache.instance().getParentMember("Yellow"));
+    }
+
+    public final void testUpdatePublishedOnEnd() {
+        RubyCache.instance().beginUpdate();
+        RubyCache.instance().addClass(createClass("Black", "shine"), "BLACK");
+        assertNull("Assert class not published", RubyCache.instance().getParentMember("Black"));
+
+        RubyCache.instance().endUpdate();
+        assertNotNull("Assert class published", RubyCache.instance().getParentMember("Black"));
+        try {
+            RubyCache.instance().getMethodsOfMember("Black").clear();
+            fail("Expected unmodifiable methods");
+        } catch (UnsupportedOperationException e) {
+            assertEquals("Assert methods unchanged", 1, RubyCache.instance().getMethodsOfMember("Black").size());
+        }
+    }
+
+    public final void testUpdatePublishedInChunks() {
+        RubyCache.instance().beginUpdate();
+        try {
+            RubyCache.instance().addClass(createClass("Grey", "dim"), "GREY");
+            RubyCache.instance().publishUpdate();
+            assertNotNull("Assert class published", RubyCache.instance().getParentMember("Grey"));
+
+            RubyCache.instance().addClass(createClass("Silver", "gleam"), "SILVER");
+            assertNull("Assert class not published", RubyCache.instance().getParentMember("Silver"));
+        } finally {
+            RubyCache.instance().endUpdate();
+        }
+        assertNotNull("Assert class published", RubyCache.instance().getParentMember("Silver"));
+    }
+
+    public final void testParentsStartingWith() {
+        RubyCache.instance().addClass(createClass("Teal", "glow"), "TEAL");
+        RubyCache.instance().addClass(createClass("TealBlue", "glow"), "TEAL_BLUE");
+        RubyCache.instance().addClass(createClass("TEAPOT", "glow"), "TEAPOT");
+        RubyCache.instance().addClass(createClass("Tan", "glow"), "TAN");
+
+        assertParentsStartingWith("Tea", false, "Teal", "TealBlue");
+        assertParentsStartingWith("tea", false);
+        assertParentsStartingWith("tea", true, "TEAPOT", "Teal", "TealBlue");
+        assertParentsStartingWith("TealB", true, "TealBlue");
+
+        RubyCache.instance().removeMembers("TEAL_BLUE");
+        assertParentsStartingWith("teal", true, "Teal");
+    }
+
+    public final void testMethodsStartingWith() {
+        RubyCache.instance().addClass(createClass("Olive", "fizz"), "OLIVE");
+        RubyCache.instance().addClass(createClass("Ochre", "fizzle"), "OCHRE");
+        RubyCache.instance().addClass(createClass("Orange", "fuzz"), "ORANGE");
+
+        assertEquals("Assert methods found", 2, RubyCache.instance().getMethodsStartingWith("fiz").size());
+        assertEquals("Assert methods found", 1, RubyCache.instance().getMethodsStartingWith("fizzl").size());
+        assertEquals("Assert methods found", 3, RubyCache.instance().getMethodsStartingWith("f").size());
+
+        RubyCache.instance().removeMembers("OCHRE");
+        assertEquals("Assert method removed", 0, RubyCache.instance().getMethodsStartingWith("fizzl").size());
+    }
+
+    public final void testInheritedMethods() {
+        RubyCache.instance().addClass(createClass("Mauve", "fade"), "MAUVE");
+        ClassMember sparkly = createClass("Sparkly", "sparkle");
+        for (Method method : sparkly.getMethods()) {
+            method.setClassMethod(false);
+        }
+        RubyCache.instance().addClass(sparkly, "SPARKLY");
+        ClassMember lilac = createClass("Lilac", "fade");
+        lilac.setSuperClassName("Mauve");
+        lilac.addIncludedModuleName("Sparkly");
+        RubyCache.instance().addClass(lilac, "LILAC");
+
+        List<ParentMember> ancestors = RubyCache.instance().getAncestors("Lilac");
+        assertEquals("Assert ancestor count correct", 3, ancestors.size());
+        assertEquals("Assert class first", "Lilac", ancestors.get(0).getName());
+        assertEquals("Assert module before superclass", "Sparkly", ancestors.get(1).getName());
+        assertEquals("Assert superclass last", "Mauve", ancestors.get(2).getName());
+
+        List<Method> methods = RubyCache.instance().getMethodsOfMemberAsList("Lilac");
+        assertEquals("Assert overridden method excluded", 2, methods.size());
+        assertEquals("Assert module method inherited", "sparkle", methods.get(0).getName());
+        assertEquals("Assert own method kept", "Lilac", methods.get(1).getFilePath());
+
+        RubyCache.instance().addClass(createClass("Mauve", "wilt"), "MAUVE");
+        methods = RubyCache.instance().getMethodsOfMemberAsList("Lilac");
+        assertEquals("Assert changed superclass method inherited", 3, methods.size());
+        assertEquals("Assert name correct", "wilt", methods.get(2).getName());
+
+        RubyCache.instance().removeMembers("SPARKLY");
+        assertEquals("Assert removed module not an ancestor", 2, RubyCache.instance().getAncestors("Lilac").size());
+        assertEquals("Assert module methods removed", 2, RubyCache.instance().getMethodsOfMemberAsList("Lilac").size());
+    }
+
+    public final void testImplicitClassMethodsOfAddedClasses() {
+        ClassMember base = createClass("ActiveRecord::Base", "establish_connection");
+        ClassMember validations = createClass("ActiveRecord::Validations", "validates_presence_of");
+        Method method = validations.getMethods().iterator().next();
+        method.setClassMethod(false);
+        RubyCache.instance().addClass(base, "AR_BASE");
+        RubyCache.instance().addClass(validations, "AR_VALIDATIONS");
+
+        RubyCache.instance().populateAddedClasses(Arrays.asList(base, validations));
+        assertTrue("Assert included module method made class method", method.isClassMethod());
+
+        RubyCache.instance().removeMembers("AR_BASE");
+        RubyCache.instance().removeMembers("AR_VALIDATIONS");
+    }
+
+    private static void assertParentsStartingWith(String partialClass, boolean ignoreCase, String... names) {
+        List<ParentMember> members = RubyCache.instance().getParentsStartingWith(partialClass, ignoreCase);
+        assertEquals("Assert match count correct for: " + partialClass, names.length, members.size());
+        for (int i = 0; i < names.length; i++) {
+            assertEquals("Assert name correct", names[i], members.get(i).getFullName());
+        }
+    }
+
+    private static ClassMember createClass(String name, String methodName) {
+        ClassMember parent = new ClassMember(name);
+        parent.setEndOffset(0);
+        Method method = new Method(methodName, null, name, name, false);
+        method.setParentMemberName(name);
+        method.setReceiver("", null);
+        method.setEndOffset(0);
+        parent.addChildMember(method);
+        return parent;
+    }
+
     private static void assertFindByMethodCorrect(String method, int index, String parentName, int parentCount) {
         List<Member> members = RubyCache.instance().getMembersWithMethodAsList(method);
         assertEquals("Assert parent match correct for: " + method, parentCount, members.size());
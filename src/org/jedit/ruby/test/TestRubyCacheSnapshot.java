@@ -0,0 +1,106 @@
+/*
+ * TestRubyCacheSnapshot.java - 
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import org.jedit.ruby.cache.RubyCache;
+import org.jedit.ruby.cache.RubyCacheSnapshot;
+import org.jedit.ruby.ast.ClassMember;
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.Method;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class TestRubyCacheSnapshot extends TestCase {
+
+    private File file;
+
+    public final void setUp() throws IOException {
+        file = File.createTempFile("rdoc", ".snapshot");
+        file.delete();
+    }
+
+    public final void tearDown() {
+        file.delete();
+    }
+
+    private static List<ClassMember> addClassesToCache() {
+        RubyCache.resetCache();
+        List<ClassMember> classes = new ArrayList<ClassMember>();
+        classes.add(createClass("String", "to_s", "str.to_s => str"));
+        classes.add(createClass("Integer", "to_s", "int.to_s => string"));
+        for (ClassMember member : classes) {
+            RubyCache.instance().addClass(member, member.getName());
+        }
+        return classes;
+    }
+
+    private static ClassMember createClass(String name, String methodName, String parameters) {
+        ClassMember parent = new ClassMember(name);
+        parent.setEndOffset(0);
+        Method method = new Method(methodName, null, "", "", false);
+        method.setDocumentationParams(parameters);
+        method.setDocumentationComment("");
+        method.setParentMemberName(name);
+        method.setReceiver("", null);
+        method.setEndOffset(0);
+        parent.addChildMember(method);
+        return parent;
+    }
+
+    public final void testRestoresReturnTypes() {
+        RubyCacheSnapshot snapshot = new RubyCacheSnapshot(file, "key", addClassesToCache());
+        assertFalse("Assert snapshot not read before written", snapshot.read());
+        RubyCache.instance().populateSuperClassMethods(snapshot);
+        assertTrue("Assert snapshot written", file.exists());
+
+        List<ClassMember> classes = addClassesToCache();
+        snapshot = new RubyCacheSnapshot(file, "key", classes);
+        assertTrue("Assert snapshot read", snapshot.read());
+        RubyCache.instance().populateSuperClassMethods(snapshot);
+
+        assertTrue("Assert cache populated", RubyCache.instance().isPopulated());
+        assertReturnType(classes.get(0), "String");
+        assertReturnType(classes.get(1), "String");
+    }
+
+    public final void testIgnoresSnapshotWithDifferentKey() {
+        RubyCacheSnapshot snapshot = new RubyCacheSnapshot(file, "key", addClassesToCache());
+        RubyCache.instance().populateSuperClassMethods(snapshot);
+
+        snapshot = new RubyCacheSnapshot(file, "other key", addClassesToCache());
+        assertFalse("Assert snapshot with different key not read", snapshot.read());
+    }
+
+    private static void assertReturnType(ClassMember parent, String returnType) {
+        Method method = (Method)parent.getChildMembers()[0];
+        Set<Member> returnTypes = method.getReturnTypes();
+        assertEquals("Assert return type count correct", 1, returnTypes.size());
+        assertSame("Assert return type restored", RubyCache.instance().getClass(returnType), returnTypes.iterator().next());
+    }
+}
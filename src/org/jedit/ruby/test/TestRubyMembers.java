@@ -0,0 +1,165 @@
+/*
+ * TestRubyMembers.java -
+ *
+ * Copyright 2005 Robert McKinnon
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.jedit.ruby.test;
+
+import junit.framework.TestCase;
+import org.jedit.ruby.ast.ClassMember;
+import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.ast.Method;
+import org.jedit.ruby.ast.Module;
+import org.jedit.ruby.ast.Problem;
+import org.jedit.ruby.ast.Root;
+import org.jedit.ruby.ast.RubyMembers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author robmckinnon at users.sourceforge.net
+ */
+public final class TestRubyMembers extends TestCase {
+
+    private static final int TEXT_LENGTH = 200;
+
+    public final void testMemberAt() {
+        RubyMembers members = createMembers();
+        assertTrue("Assert root before first member", members.getMemberAt(0) instanceof Root);
+        assertEquals("Assert module at start", "Red", members.getMemberAt(10).getName());
+        assertEquals("Assert class in module", "Blue", members.getMemberAt(22).getName());
+        assertEquals("Assert method in class", "green", members.getMemberAt(35).getName());
+        assertEquals("Assert class between methods", "Blue", members.getMemberAt(45).getName());
+        assertEquals("Assert method at end", "yellow", members.getMemberAt(60).getName());
+        assertEquals("Assert module after class", "Red", members.getMemberAt(85).getName());
+        assertTrue("Assert root between modules", members.getMemberAt(95) instanceof Root);
+        assertEquals("Assert last module", "Purple", members.getMemberAt(150).getName());
+    }
+
+    public final void testLastMemberBefore() {
+        RubyMembers members = createMembers();
+        assertNull("Assert no member before first", members.getLastMemberBefore(5));
+        assertEquals("Assert module", "Red", members.getLastMemberBefore(18).getName());
+        assertEquals("Assert second method", "yellow", members.getLastMemberBefore(85).getName());
+        assertEquals("Assert last module", "Purple", members.getLastMemberBefore(199).getName());
+        assertEquals("Assert next member", "Blue", members.getNextMember(18).getName());
+        assertNull("Assert no member after last", members.getNextMember(150));
+    }
+
+    public final void testLookupsMatchScanAtEveryOffset() {
+        RubyMembers members = createMembers();
+        assertLookupsMatchScan(members);
+    }
+
+    public final void testCopyShiftedLeavesOriginal() {
+        RubyMembers members = createMembers();
+        Member red = members.getMembers()[0];
+        Member purple = members.getMembers()[1];
+        Member shiftedPurple = purple.copyShifted(7);
+        RubyMembers shifted = new RubyMembers(new Member[] {red, shiftedPurple}, new ArrayList<Problem>(), TEXT_LENGTH + 7);
+
+        assertEquals("Assert original not shifted", 100, purple.getStartOuterOffset());
+        assertEquals("Assert copy shifted", 107, shiftedPurple.getStartOuterOffset());
+        assertSame("Assert original lookup unchanged", purple, members.getMemberAt(103));
+        assertSame("Assert copy found at shifted offset", shiftedPurple, shifted.getMemberAt(197));
+        assertLookupsMatchScan(members);
+        assertLookupsMatchScan(shifted);
+
+        Member blue = red.getChildMembers()[0].copyShifted(3);
+        assertEquals("Assert children copied", 2, blue.getChildMembers().length);
+        assertSame("Assert child parent is copy", blue, blue.getChildMembers()[0].getParentMember());
+        assertEquals("Assert child shifted", 33, blue.getChildMembers()[0].getStartOuterOffset());
+        assertEquals("Assert original child unchanged", 30, red.getChildMembers()[0].getChildMembers()[0].getStartOuterOffset());
+    }
+
+    public final void testOverlappingMembersMatchScan() {
+        Member first = createMember(new Module("First"), 10, 10, 60);
+        Member second = createMember(new Module("Second"), 40, 40, 90);
+        Member third = createMember(new Module("Third"), 30, 30, 50);
+        RubyMembers members = new RubyMembers(new Member[] {first, second, third}, new ArrayList<Problem>(), 100);
+        assertLookupsMatchScan(members);
+    }
+
+    private static void assertLookupsMatchScan(RubyMembers members) {
+        List<Member> list = getMemberList(members);
+        for (int offset = 0; offset < TEXT_LENGTH; offset++) {
+            Member expected = scanForMemberAt(list, offset);
+            Member member = members.getMemberAt(offset);
+            if (expected == null) {
+                assertTrue("Assert root at " + offset, member instanceof Root);
+            } else {
+                assertSame("Assert member at " + offset, expected, member);
+            }
+            assertSame("Assert last member before " + offset, scanForLastMemberBefore(list, offset), members.getLastMemberBefore(offset));
+        }
+    }
+
+    private static Member scanForMemberAt(List<Member> list, int offset) {
+        Member found = null;
+        for (Member member : list) {
+            if (offset >= member.getStartOuterOffset() && offset <= member.getEndOffset()) {
+                found = member;
+            }
+        }
+        return found;
+    }
+
+    private static Member scanForLastMemberBefore(List<Member> list, int offset) {
+        for (int i = 0; i < list.size(); i++) {
+            if (offset >= list.get(i).getStartOffset()
+                    && (i == list.size() - 1 || offset < list.get(i + 1).getStartOffset())) {
+                return list.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static List<Member> getMemberList(RubyMembers members) {
+        List<Member> list = new ArrayList<Member>();
+        addMembers(members.getMembers(), list);
+        return list;
+    }
+
+    private static void addMembers(Member[] members, List<Member> list) {
+        for (Member member : members) {
+            list.add(member);
+            if (member.hasChildMembers()) {
+                addMembers(member.getChildMembers(), list);
+            }
+        }
+    }
+
+    private static RubyMembers createMembers() {
+        Member red = createMember(new Module("Red"), 10, 17, 90);
+        Member blue = createMember(new ClassMember("Blue"), 20, 26, 80);
+        Member green = createMember(new Method("green", "", "file.rb", "file.rb", false), 30, 34, 40);
+        Member yellow = createMember(new Method("yellow", "", "file.rb", "file.rb", false), 50, 54, 70);
+        Member purple = createMember(new Module("Purple"), 100, 107, 190);
+        red.addChildMember(blue);
+        blue.addChildMember(green);
+        blue.addChildMember(yellow);
+        return new RubyMembers(new Member[] {red, purple}, new ArrayList<Problem>(), TEXT_LENGTH);
+    }
+
+    private static Member createMember(Member member, int outerOffset, int startOffset, int endOffset) {
+        member.setStartOuterOffset(outerOffset);
+        member.setStartOffset(startOffset);
+        member.setEndOffset(endOffset);
+        return member;
+    }
+}
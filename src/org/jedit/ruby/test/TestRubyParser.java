@@ -20,8 +20,10 @@
 package org.jedit.ruby.test;
 
 import junit.framework.TestCase;
+import org.gjt.sp.jedit.buffer.JEditBuffer;
 import org.jedit.ruby.*;
 import org.jedit.ruby.cache.*;
+import org.jedit.ruby.parser.ParseService;
 import org.jedit.ruby.parser.RubyParser;
 import org.jedit.ruby.parser.LineCounter;
 import org.jedit.ruby.ast.Member;
@@ -30,8 +32,13 @@ import org.jedit.ruby.ast.ClassMember;
 import org.jedit.ruby.ast.MethodCallWithSelfAsAnImplicitReceiver;
 import org.jrubyparser.SourcePosition;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author robmckinnon at users.sourceforge.net
@@ -42,6 +49,35 @@ public final class TestRubyParser extends TestCase {
             "  end\n" +
             "end";
 
+    private static final String CODE_WITH_BROKEN_METHOD = "class Red\n" +
+            "  def blue\n" +
+            "  end\n" +
+            "  def green\n" +
+            "    paint(\n" +
+            "  end\n" +
+            "  def brown\n" +
+            "  end\n" +
+            "end\n";
+
+    private static final String CODE_WITH_UNCLOSED_METHOD = "class Red\n" +
+            "  def blue\n" +
+            "    if dark?\n" +
+            "  end\n" +
+            "  def brown\n" +
+            "  end\n" +
+            "end\n";
+
+    private static final String CODE_WITH_MISINDENTED_METHOD_AFTER_BROKEN_METHOD = "class Red\n" +
+            "  def blue\n" +
+            "    paint(\n" +
+            "  end\n" +
+            "  def green\n" +
+            "      paint\n" +
+            "    end\n" +
+            "  def brown\n" +
+            "  end\n" +
+            "end\n";
+
     private static final String ARR_DEF = "def []\n" +
             "end\n";
 
@@ -392,12 +428,192 @@ public final class TestRubyParser extends TestCase {
         assertEquals("Class offset correct.", 35, member.getEndOffset());
     }
 
+    public final void testOneLetterSingletonMethods() {
+        String code = "class Foo\n  def self.e(a)\n  end\n\n  def Foo.o(b)\n  end\n\n  def self.s\n  end\n\n  def self.f a\n  end\nend\n";
+        List<Member> methods = RubyParser.getMembers(code, getUniquePath()).getMembers()[0].getChildMembersAsList();
+        assertEquals("Assert method count correct", 4, methods.size());
+        assertEquals("Assert name correct", "self::e", methods.get(0).getFullName());
+        assertEquals("Assert short name correct", "e", methods.get(0).getShortName());
+        assertEquals("Assert name correct", "Foo::o", methods.get(1).getFullName());
+        assertEquals("Assert short name correct", "o", methods.get(1).getShortName());
+        assertEquals("Assert name correct", "self::s", methods.get(2).getFullName());
+        assertEquals("Assert name correct", "self::f", methods.get(3).getFullName());
+    }
+
     public final void testErrors() {
         RubyMembers members = RubyParser.getMembers(ERROR_CODE, getUniquePath());
         assertTrue("Assert errors exist", members.containsErrors());
         assertEquals("Assert error count correct", 1, members.getProblems().length);
     }
 
+    public final void testRecoverFromBrokenMethod() {
+        RubyMembers members = RubyParser.getMembers(CODE_WITH_BROKEN_METHOD, getUniquePath());
+        assertFalse("Assert members recovered", members.containsErrors());
+        assertTrue("Assert error reported", members.getProblems().length > 0);
+
+        List<Member> childMembers = members.getMembers()[0].getChildMembersAsList();
+        assertEquals("Assert only broken method lost", 2, childMembers.size());
+        assertEquals("Assert method recovered", "blue", childMembers.get(0).getShortName());
+        assertEquals("Assert method recovered", "brown", childMembers.get(1).getShortName());
+        assertEquals("Assert offset correct", CODE_WITH_BROKEN_METHOD.indexOf("brown"), childMembers.get(1).getStartOffset());
+    }
+
+    public final void testRecoverFromUnclosedBlock() {
+        RubyMembers members = RubyParser.getMembers(CODE_WITH_UNCLOSED_METHOD, getUniquePath());
+        assertFalse("Assert members recovered", members.containsErrors());
+
+        List<Member> childMembers = members.getMembers()[0].getChildMembersAsList();
+        assertEquals("Assert methods recovered", 2, childMembers.size());
+        assertEquals("Assert offset correct", CODE_WITH_UNCLOSED_METHOD.indexOf("brown"), childMembers.get(1).getStartOffset());
+    }
+
+    public final void testRecoverKeepsMisindentedMethodAfterError() {
+        String code = CODE_WITH_MISINDENTED_METHOD_AFTER_BROKEN_METHOD;
+        RubyMembers members = RubyParser.getMembers(code, getUniquePath());
+        assertFalse("Assert members recovered", members.containsErrors());
+
+        List<Member> childMembers = members.getMembers()[0].getChildMembersAsList();
+        assertEquals("Assert only broken method lost", 2, childMembers.size());
+        assertEquals("Assert misindented method kept", "green", childMembers.get(0).getShortName());
+        assertEquals("Assert method recovered", "brown", childMembers.get(1).getShortName());
+    }
+
+    /**
+     * Follows the caret path, which takes the members of the
+     * buffer's last parse from {@link ParseService}.
+     */
+    public final void testNoReparseOfUnchangedText() {
+        String path = getUniquePath() + "unchanged";
+        JEditBuffer buffer = new JEditBuffer();
+        buffer.insert(0, DUCK);
+        ParseService.instance().getMembers(buffer, path);
+        int parseCount = RubyParser.getParseCount();
+
+        for (int offset = 0; offset < DUCK.length(); offset++) {
+            RubyMembers members = ParseService.instance().getCurrentMembers(path);
+            assertNotNull("Assert current members at " + offset, members);
+            members.getMemberAt(offset);
+            members.getLastMemberBefore(offset);
+        }
+        assertEquals("Assert unchanged text not reparsed", parseCount, RubyParser.getParseCount());
+
+        buffer.insert(buffer.getLength(), "\n");
+        ParseService.instance().bufferChanged(buffer, path);
+        assertNull("Assert changed text not current", ParseService.instance().getCurrentMembers(path));
+        ParseService.instance().getMembers(buffer, path);
+        assertEquals("Assert changed text parsed", parseCount + 1, RubyParser.getParseCount());
+    }
+
+    /**
+     * Follows the structure matcher, which takes the member at the
+     * caret from the last parse while edits wait to be parsed.
+     */
+    public final void testParsedMemberAcrossEdits() {
+        String path = getUniquePath() + "edited";
+        String code = "class Red\n  def blue\n  end\n\n  def green\n  end\nend\n";
+        JEditBuffer buffer = new JEditBuffer();
+        buffer.insert(0, code);
+        ParseService.instance().getMembers(buffer, path);
+
+        String inserted = "    paint\n";
+        int offset = code.indexOf("  end");
+        buffer.insert(offset, inserted);
+        ParseService.instance().textInserted(buffer, path, offset, inserted.length());
+        String text = buffer.getText(0, buffer.getLength());
+
+        Member blue = ParseService.instance().getParsedMemberAt(path, offset + inserted.length());
+        assertEquals("Assert member around edit found", "blue", blue.getShortName());
+        assertEquals("Assert end shifted", text.indexOf("end", offset) + 3, blue.getEndOffset());
+
+        Member green = ParseService.instance().getParsedMemberAt(path, text.indexOf("green"));
+        assertEquals("Assert member after edit found", "green", green.getShortName());
+        assertEquals("Assert start shifted", text.indexOf("def green"), green.getStartOuterOffset());
+
+        assertNull("Assert no member inside edit", ParseService.instance().getParsedMemberAt(path, offset + 2));
+    }
+
+    public final void testReparseInsertedMember() {
+        String path = getUniquePath() + "inserted";
+        String code = "def red\nend\n\ndef blue\nend\n";
+        Member[] previous = RubyParser.getMembers(code, path).getMembers();
+
+        String inserted = "def green\nend\n";
+        int offset = code.indexOf("def blue");
+        RubyParser.textInserted(path, offset, inserted.length());
+        code = code.substring(0, offset) + inserted + code.substring(offset);
+
+        assertRegionReparsed(code, path, previous[0]);
+    }
+
+    public final void testReparseRemovedText() {
+        String path = getUniquePath() + "removed";
+        String code = "def green\nend\n\nclass Red\n  def pink\n  end\n\n  def rose\n  end\nend\n\ndef blue\nend\n";
+        Member[] previous = RubyParser.getMembers(code, path).getMembers();
+
+        int offset = code.indexOf("  def pink");
+        int length = code.indexOf("  def rose") - offset;
+        RubyParser.textRemoved(path, offset, length);
+        code = code.substring(0, offset) + code.substring(offset + length);
+
+        assertRegionReparsed(code, path, previous[0]);
+    }
+
+    /**
+     * Members before an edited region are kept, not parsed
+     * again, so a full reparse would fail the assertSame.
+     */
+    private void assertRegionReparsed(String code, String path, Member memberBeforeRegion) {
+        int parseCount = RubyParser.getParseCount();
+        Member[] members = RubyParser.getMembers(code, path).getMembers();
+
+        assertEquals("Assert one region parsed", parseCount + 1, RubyParser.getParseCount());
+        assertSame("Assert member before region kept", memberBeforeRegion, members[0]);
+        assertReparseCorrect(code, Arrays.asList(members));
+    }
+
+    public final void testParseFilesConcurrently() throws Exception {
+        final String[] codes = {CLASS_AND_DEF, MODULE_METHOD, DUCK, globalIfFile};
+        ExecutorService workers = Executors.newFixedThreadPool(codes.length);
+        List<Future<RubyMembers>> results = new ArrayList<Future<RubyMembers>>();
+
+        for (int i = 0; i < codes.length * 8; i++) {
+            final String code = codes[i % codes.length];
+            final String path = getUniquePath() + "concurrent" + i;
+            results.add(workers.submit(new Callable<RubyMembers>() {
+                public RubyMembers call() {
+                    return RubyParser.getMembers(code, path);
+                }
+            }));
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            List<Member> expected = RubyParser.getMembersAsList(codes[i % codes.length], getUniquePath(), null);
+            Member[] members = results.get(i).get().getMembers();
+            assertEquals("Assert member count correct", expected.size(), members.length);
+            for (int j = 0; j < members.length; j++) {
+                assertEquals("Assert name correct", expected.get(j).getFullName(), members[j].getFullName());
+                assertEquals("Assert end offset correct", expected.get(j).getEndOffset(), members[j].getEndOffset());
+            }
+        }
+        workers.shutdown();
+    }
+
+    private void assertReparseCorrect(String code, List<Member> members) {
+        List<Member> expected = RubyParser.getMembersAsList(code, getUniquePath() + "full", null);
+        assertEquals("Assert member count correct", expected.size(), members.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Member member = expected.get(i);
+            this.code = code;
+            assertCorrect(i, member.getFullName(), null, member.getStartOuterOffset(),
+                    member.getStartOffset(), member.getEndOffset(), members);
+            assertEquals("Assert child count correct", getChildCount(member), getChildCount(members.get(i)));
+        }
+    }
+
+    private static int getChildCount(Member member) {
+        return member.hasChildMembers() ? member.getChildMembersAsList().size() : 0;
+    }
+
     private static String getUniquePath() {
         return PATH + System.currentTimeMillis();
     }
@@ -20,20 +20,26 @@
 
 package org.jedit.ruby.utils;
 
+import org.gjt.sp.jedit.buffer.JEditBuffer;
 import org.gjt.sp.jedit.textarea.JEditTextArea;
-import org.jedit.ruby.structure.RubyTokenHandler;
+import org.jedit.ruby.structure.LineTokenCache;
 import org.jedit.ruby.structure.RubyToken;
 import org.jedit.ruby.structure.BufferChangeHandler;
 
 import javax.swing.event.CaretListener;
 import javax.swing.event.CaretEvent;
+import javax.swing.text.Segment;
 
 /**
+ * Records the characters and syntax tokens either side of the
+ * caret as it moves. Characters are read from the buffer into
+ * a reused segment, rather than copying the buffer's text.
+ *
  * @author robmckinnon at users.sourceforge.net
  */
 public final class CharCaretListener implements CaretListener {
 
-    private static final RubyTokenHandler tokenHandler = new RubyTokenHandler();
+    private static final Segment segment = new Segment();
     private static final char NONE = (char)-1;
 
     private static RubyToken lastToken = null;
@@ -70,22 +76,25 @@ public final class CharCaretListener implements CaretListener {
         if (!BufferChangeHandler.instance().isGotoPreviousEditAction()) {
             BufferChangeHandler.instance().resetEditLocationIndex();
         }
-        int mark = e.getMark();
-        int dot = e.getDot();
+        JEditTextArea textArea = (JEditTextArea)e.getSource();
+        caretMoved(textArea.getBuffer(), e.getDot(), e.getMark());
+    }
+
+    /**
+     * Records the characters and token either side of the caret,
+     * or clears them if there is a selection or the caret is at
+     * the start of the buffer.
+     */
+    public static void caretMoved(JEditBuffer buffer, int dot, int mark) {
         charLastBehind = charBehind;
         lastToken = currentToken;
 
         if (dot == mark && dot > 0) {
-            JEditTextArea textArea = (JEditTextArea)e.getSource();
-            String text = textArea.getText();
-            charBehind = text.charAt(dot - 1);
-            currentToken = tokenHandler.getTokenAtCaret(CommandUtils.getBuffer(textArea), dot);
-
-            if (text.length() > dot) {
-                charAhead = text.charAt(dot);
-            } else {
-                charAhead = NONE;
-            }
+            boolean hasCharAhead = buffer.getLength() > dot;
+            buffer.getText(dot - 1, hasCharAhead ? 2 : 1, segment);
+            charBehind = segment.array[segment.offset];
+            charAhead = hasCharAhead ? segment.array[segment.offset + 1] : NONE;
+            currentToken = LineTokenCache.instance(buffer).getTokenAtCaret(dot);
         } else {
             currentToken = null;
             lastToken = null;
@@ -95,4 +104,4 @@ public final class CharCaretListener implements CaretListener {
         }
     }
 
-}
\ No newline at end of file
+}
@@ -31,6 +31,8 @@ public interface EditorView {
 
     Member getMemberAtCaretPosition();
 
+    Member getParsedMemberAtCaretPosition();
+
     int getNonSpaceStartOffset(int line);
 
     int getEndOffset(int line);
@@ -89,6 +91,10 @@ public interface EditorView {
             return null;
         }
 
+        public final Member getParsedMemberAtCaretPosition() {
+            return null;
+        }
+
         public final int getNonSpaceStartOffset(int line) {
             return 0;
         }
@@ -26,6 +26,7 @@ import org.gjt.sp.jedit.syntax.KeywordMap;
 import org.gjt.sp.util.StandardUtilities;
 import org.jedit.ruby.ast.RubyMembers;
 import org.jedit.ruby.ast.Member;
+import org.jedit.ruby.parser.ParseService;
 import org.jedit.ruby.parser.RubyParser;
 
 import java.util.*;
@@ -107,7 +108,7 @@ public final class ViewWrapper implements EditorView {
      * @return RubyMembers
      */
     public final RubyMembers getMembers() {
-        RubyMembers members = RubyParser.getMembers(textArea().getView());
+        RubyMembers members = ParseService.instance().getMembers(buffer());
         boolean useLastGoodParse = members.containsErrors() && RubyParser.hasLastGoodMembers(buffer());
 
         return useLastGoodParse ? RubyParser.getLastGoodMembers(buffer()) : members;
@@ -127,6 +128,18 @@ public final class ViewWrapper implements EditorView {
         return errorsPresent ? null : members.getMemberAt(getCaretPosition());
     }
 
+    /**
+     * Returns {@link Member} at caret position from the last
+     * completed parse, without waiting for the buffer to be parsed.
+     * Returns null if the buffer hasn't been parsed, or if edits
+     * since may have moved the member at the caret.
+     *
+     * @return {@link Member} at caret or null
+     */
+    public final Member getParsedMemberAtCaretPosition() {
+        return ParseService.instance().getParsedMemberAt(buffer(), getCaretPosition());
+    }
+
     public final View getView() {
         return view;
     }
@@ -171,7 +184,7 @@ public final class ViewWrapper implements EditorView {
     }
 
     public final int getTextLength() {
-        return textArea().getText().length();
+        return buffer().getLength();
     }
 
     public List<String> getKeywords() {